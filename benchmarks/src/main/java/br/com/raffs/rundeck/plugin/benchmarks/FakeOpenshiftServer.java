@@ -0,0 +1,909 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.JsonDiff;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.ByteString;
+import okio.GzipSource;
+import okio.Okio;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process Openshift API server, answering the requests sent by the
+ * OpenshiftClient: server status, projects, Deployment Configurations
+ * (GET, PUT, PATCH, instantiate), pods and replication controllers of the
+ * deployments, watches and the OAuth authorization.
+ *
+ * The rollouts are simulated from the clock: the pods of a new deployment
+ * are created one after the other (pod-interval) and become ready, or fail,
+ * after the pod-start-time. The watches stream the changes as they happen,
+ * the server ending each watch at the next change (or after the watch-timeout)
+ * like a real server with a short timeoutSeconds.
+ *
+ * Usage:
+ *   FakeOpenshiftServer server = new FakeOpenshiftServer()
+ *           .withLatency(20)
+ *           .withPodStartTime(500)
+ *           .withDeploymentConfig("checkout", manifest)
+ *           .start();
+ *   ... point the OpenshiftClient to server.getUrl() ...
+ *   server.getRequestCounts();   // ex: {GET deploymentconfigs=4, GET pods=7, PATCH deploymentconfigs=1}
+ */
+public class FakeOpenshiftServer implements Closeable {
+
+    // Resources answered by the server.
+    private static final Pattern API_ROOT = Pattern.compile("^/oapi/v1/?$");
+    private static final Pattern PROJECT = Pattern.compile("^/oapi/v1/projects/([^/]+)$");
+    private static final Pattern DEPLOYMENT_CONFIGS = Pattern.compile("^/oapi/v1/namespaces/([^/]+)/deploymentconfigs$");
+    private static final Pattern DEPLOYMENT_CONFIG =
+            Pattern.compile("^/oapi/v1/namespaces/([^/]+)/deploymentconfigs/([^/]+)(/instantiate)?$");
+    private static final Pattern PODS = Pattern.compile("^/api/v1/namespaces/([^/]+)/pods$");
+    private static final Pattern REPLICATION_CONTROLLER =
+            Pattern.compile("^/api/v1/namespaces/([^/]+)/replicationcontrollers/(.+)-([0-9]+)$");
+
+    // Keys of the lists merged by item on the strategic merge patches.
+    private static final Map<String, String> MERGE_KEYS = new HashMap<String, String>();
+    static {
+        MERGE_KEYS.put("containers", "name");
+        MERGE_KEYS.put("initContainers", "name");
+        MERGE_KEYS.put("env", "name");
+        MERGE_KEYS.put("volumes", "name");
+        MERGE_KEYS.put("imagePullSecrets", "name");
+        MERGE_KEYS.put("volumeMounts", "mountPath");
+        MERGE_KEYS.put("ports", "containerPort");
+    }
+
+    // Added to the times (in milliseconds since the start) to make the resourceVersions,
+    // so the deployments done before the start have a positive version too.
+    private static final long VERSION_OFFSET = 1000000;
+
+    // Time (in milliseconds) between the parts of a watch stream.
+    private static final int WATCH_RESOLUTION = 25;
+
+    // Class attributes, the scenario.
+    private volatile long latency;
+    private volatile double errorRate;
+    private volatile int errorCode;
+    private volatile long podStartTime;
+    private volatile long podInterval;
+    private volatile int failingPods;
+    private volatile boolean watchAllowed;
+    private volatile long watchTimeout;
+    private final LinkedList<Integer> scriptedErrors = new LinkedList<Integer>();
+    private final Random random = new Random(42);
+
+    // Class attributes, the cluster state.
+    private final Map<String, DeploymentConfig> configs = new HashMap<String, DeploymentConfig>();
+    private final Map<String, Integer> requestCounts = new TreeMap<String, Integer>();
+    private final MockWebServer server = new MockWebServer();
+    private long epoch;
+
+    public FakeOpenshiftServer() {
+        this.errorCode = 503;
+        this.podStartTime = 500;
+        this.podInterval = 100;
+        this.watchAllowed = true;
+        this.watchTimeout = 5000;
+    }
+
+    /**
+     * Define the time (in milliseconds) taken to answer each request.
+     */
+    public FakeOpenshiftServer withLatency(long latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Define the share (0 to 1) of the requests failed with the error code,
+     * the watches and the OAuth requests never fail.
+     */
+    public FakeOpenshiftServer withErrorRate(double errorRate, int errorCode) {
+        this.errorRate = errorRate;
+        this.errorCode = errorCode;
+        return this;
+    }
+
+    /**
+     * Define the time (in milliseconds) a pod takes from created to ready.
+     */
+    public FakeOpenshiftServer withPodStartTime(long podStartTime) {
+        this.podStartTime = podStartTime;
+        return this;
+    }
+
+    /**
+     * Define the time (in milliseconds) between the creation of the pods of a deployment.
+     */
+    public FakeOpenshiftServer withPodInterval(long podInterval) {
+        this.podInterval = podInterval;
+        return this;
+    }
+
+    /**
+     * Define how many pods of the next deployments fail instead of becoming ready.
+     */
+    public FakeOpenshiftServer withFailingPods(int failingPods) {
+        this.failingPods = failingPods;
+        return this;
+    }
+
+    /**
+     * Define whether the watches are allowed, they are refused with 403 otherwise.
+     */
+    public FakeOpenshiftServer withWatch(boolean watchAllowed) {
+        this.watchAllowed = watchAllowed;
+        return this;
+    }
+
+    /**
+     * Define the max time (in milliseconds) a watch is kept open without any change.
+     */
+    public FakeOpenshiftServer withWatchTimeout(long watchTimeout) {
+        this.watchTimeout = watchTimeout;
+        return this;
+    }
+
+    /**
+     * Fail the next requests with the given status codes, one for each request,
+     * ex: failNext(409) for an update conflict, failNext(503, 503) for an outage.
+     */
+    public FakeOpenshiftServer failNext(int... codes) {
+        synchronized (scriptedErrors) {
+            for (int code : codes) scriptedErrors.add(code);
+        }
+        return this;
+    }
+
+    /**
+     * Add a Deployment Configuration to the project (created when missing),
+     * with its first deployment already finished.
+     *
+     * @param project name of the project
+     * @param manifest the Deployment Configuration, with at least metadata.name and spec
+     */
+    public FakeOpenshiftServer withDeploymentConfig(String project, JSONObject manifest) {
+        String name = manifest.getJSONObject("metadata").getString("name");
+        DeploymentConfig config = new DeploymentConfig(project, name, new JSONObject(manifest.getJSONObject("spec").toString()));
+        config.rollouts.add(new Rollout(1, -VERSION_OFFSET / 2, config.replicas(), 0, 0, 0));
+
+        synchronized (configs) {
+            configs.put(project + "/" + name, config);
+        }
+        return this;
+    }
+
+    /**
+     * Start the server on a random local port.
+     */
+    public FakeOpenshiftServer start() throws IOException {
+        // the cancelled watches are logged as failed connections.
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(Level.WARNING);
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return answer(request);
+            }
+        });
+        server.start();
+        epoch = System.currentTimeMillis();
+        return this;
+    }
+
+    /**
+     * Return the url of the server, without the trailing slash.
+     */
+    public String getUrl() {
+        return server.url("/").toString().replaceAll("/$", "");
+    }
+
+    /**
+     * Return the number of requests received, by operation (ex: "GET pods").
+     */
+    public Map<String, Integer> getRequestCounts() {
+        synchronized (requestCounts) {
+            return new TreeMap<String, Integer>(requestCounts);
+        }
+    }
+
+    /**
+     * Return the number of requests received.
+     */
+    public int getRequestCount() {
+        int total = 0;
+        for (int count : getRequestCounts().values()) total += count;
+        return total;
+    }
+
+    /**
+     * Forget the requests received.
+     */
+    public void resetRequestCounts() {
+        synchronized (requestCounts) {
+            requestCounts.clear();
+        }
+    }
+
+    /**
+     * Return the latest deployment version of the Deployment Configuration.
+     */
+    public int getLatestVersion(String project, String name) {
+        synchronized (configs) {
+            DeploymentConfig config = configs.get(project + "/" + name);
+            return config == null ? 0 : config.rollouts.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    /**
+     * Answer the request, after the latency and the injected errors.
+     */
+    private MockResponse answer(RecordedRequest request) throws InterruptedException {
+        HttpUrl url = request.getRequestUrl();
+        String path = url.encodedPath();
+        boolean watch = "true".equals(url.queryParameter("watch"));
+        count(request.getMethod(), path);
+
+        if (latency > 0) Thread.sleep(latency);
+
+        if (path.equals("/healthz")) return new MockResponse().setBody("ok");
+        if (path.equals("/oauth/authorize")) {
+            return new MockResponse()
+                    .setResponseCode(302)
+                    .setHeader("Location", getUrl() + "/oauth/token/implicit#access_token=fake-token"
+                            + "&expires_in=86400&scope=user%3Afull&token_type=Bearer");
+        }
+
+        if (! watch) {
+            Integer error = null;
+            synchronized (scriptedErrors) {
+                if (! scriptedErrors.isEmpty()) error = scriptedErrors.removeFirst();
+            }
+            synchronized (random) {
+                if (error == null && errorRate > 0 && random.nextDouble() < errorRate) error = errorCode;
+            }
+            if (error != null) return status(error, "injected error");
+        }
+
+        try {
+            Matcher matcher;
+            if (API_ROOT.matcher(path).matches()) {
+                return json(200, new JSONObject()
+                        .put("kind", "APIResourceList")
+                        .put("groupVersion", "v1")
+                        .put("resources", new JSONArray()));
+            }
+            if ((matcher = PROJECT.matcher(path)).matches()) {
+                return project(matcher.group(1));
+            }
+            if ((matcher = DEPLOYMENT_CONFIGS.matcher(path)).matches() && watch) {
+                String selector = url.queryParameter("fieldSelector");
+                String name = selector != null ? selector.replaceFirst("^metadata\\.name=", "") : "";
+                return watchDeploymentConfig(matcher.group(1), name, url.queryParameter("resourceVersion"));
+            }
+            if ((matcher = DEPLOYMENT_CONFIG.matcher(path)).matches()) {
+                return deploymentConfig(request, matcher.group(1), matcher.group(2), matcher.group(3) != null);
+            }
+            if ((matcher = PODS.matcher(path)).matches()) {
+                return pods(matcher.group(1), url.queryParameter("labelSelector"), watch,
+                        url.queryParameter("resourceVersion"));
+            }
+            if ((matcher = REPLICATION_CONTROLLER.matcher(path)).matches()) {
+                return replicationController(matcher.group(1), matcher.group(2), Integer.parseInt(matcher.group(3)));
+            }
+
+            return status(404, String.format("the server could not find the requested resource %s", path));
+        }
+        catch (Exception ex) {
+            return status(500, ex.toString());
+        }
+    }
+
+    private MockResponse project(String project) {
+        synchronized (configs) {
+            for (DeploymentConfig config : configs.values()) {
+                if (config.project.equals(project)) {
+                    return json(200, new JSONObject()
+                            .put("kind", "Project")
+                            .put("apiVersion", "v1")
+                            .put("metadata", new JSONObject().put("name", project))
+                            .put("status", new JSONObject().put("phase", "Active")));
+                }
+            }
+        }
+
+        return status(404, String.format("projects \"%s\" not found", project));
+    }
+
+    /**
+     * Read, update or instantiate the Deployment Configuration.
+     */
+    private MockResponse deploymentConfig(RecordedRequest request, String project, String name,
+                                          boolean instantiate) throws IOException {
+        synchronized (configs) {
+            DeploymentConfig config = configs.get(project + "/" + name);
+            if (config == null)
+                return status(404, String.format("deploymentconfigs \"%s\" not found", name));
+
+            long now = now();
+            String method = request.getMethod();
+            if (instantiate && method.equals("POST")) {
+                config.deploy(now);
+                return json(201, config.toJSON(now));
+            }
+            if (method.equals("GET")) return json(200, config.toJSON(now));
+
+            JSONObject body = new JSONObject(body(request));
+            JSONObject desired;
+            if (method.equals("PUT")) desired = body;
+            else if (method.equals("PATCH")) {
+                String contentType = request.getHeader("Content-Type");
+                desired = config.toJSON(now);
+                merge(desired, body, contentType != null && contentType.contains("strategic-merge-patch"));
+            }
+            else return status(405, String.format("method %s not allowed", method));
+
+            config.update(desired, now);
+            return json(200, config.toJSON(now));
+        }
+    }
+
+    /**
+     * List or watch the pods of a deployment, selected by the deployment label.
+     */
+    private MockResponse pods(String project, String selector, boolean watch, String resourceVersion) {
+        if (selector == null || ! selector.matches("deployment=.+-[0-9]+"))
+            return status(400, "only the deployment=<name>-<version> label selector is supported");
+
+        String deployment = selector.substring("deployment=".length());
+        String name = deployment.substring(0, deployment.lastIndexOf('-'));
+        int version = Integer.parseInt(deployment.substring(deployment.lastIndexOf('-') + 1));
+
+        synchronized (configs) {
+            DeploymentConfig config = configs.get(project + "/" + name);
+            Rollout rollout = config != null && version >= 1 && version <= config.rollouts.size()
+                    ? config.rollouts.get(version - 1) : null;
+
+            long now = now();
+            if (! watch) {
+                JSONArray items = new JSONArray();
+                if (rollout != null) {
+                    for (int i = 0; i < rollout.replicas; i++) {
+                        JSONObject pod = rollout.pod(config, i, now);
+                        if (pod != null) items.put(pod);
+                    }
+                }
+
+                return json(200, new JSONObject()
+                        .put("kind", "PodList")
+                        .put("apiVersion", "v1")
+                        .put("metadata", new JSONObject().put("resourceVersion", version(now)))
+                        .put("items", items));
+            }
+
+            if (! watchAllowed) return status(403, "watch is not allowed");
+
+            // the pod changes since the resourceVersion, until the watch timeout.
+            long since = since(resourceVersion, now);
+            long until = now + watchTimeout;
+            TreeMap<Long, List<String>> events = new TreeMap<Long, List<String>>();
+            if (rollout != null) {
+                for (int i = 0; i < rollout.replicas; i++) {
+                    long created = rollout.createdAt(i);
+                    long finished = rollout.finishedAt(i);
+                    if (created > since && created <= until) {
+                        add(events, created, event("ADDED", rollout.pod(config, i, created)));
+                    }
+                    if (finished > since && finished <= until) {
+                        add(events, finished, event("MODIFIED", rollout.pod(config, i, finished)));
+                    }
+                }
+            }
+
+            return stream(events, now, until, false);
+        }
+    }
+
+    /**
+     * Watch the Deployment Configuration, one event with the state of the last change.
+     */
+    private MockResponse watchDeploymentConfig(String project, String name, String resourceVersion) {
+        if (! watchAllowed) return status(403, "watch is not allowed");
+
+        synchronized (configs) {
+            DeploymentConfig config = configs.get(project + "/" + name);
+            long now = now();
+            long since = since(resourceVersion, now);
+            long until = now + watchTimeout;
+
+            TreeMap<Long, List<String>> events = new TreeMap<Long, List<String>>();
+            if (config != null) {
+                for (long time : config.changes()) {
+                    if (time > since && time <= until && ! events.containsKey(time)) {
+                        add(events, time, event("MODIFIED", config.toJSON(time)));
+                    }
+                }
+            }
+
+            return stream(events, now, until, true);
+        }
+    }
+
+    /**
+     * Return the ReplicationController of a deployment, with its deployment phase.
+     */
+    private MockResponse replicationController(String project, String name, int version) {
+        synchronized (configs) {
+            DeploymentConfig config = configs.get(project + "/" + name);
+            if (config == null || version < 1 || version > config.rollouts.size())
+                return status(404, String.format("replicationcontrollers \"%s-%d\" not found", name, version));
+
+            long now = now();
+            Rollout rollout = config.rollouts.get(version - 1);
+            return json(200, new JSONObject()
+                    .put("kind", "ReplicationController")
+                    .put("apiVersion", "v1")
+                    .put("metadata", new JSONObject()
+                            .put("name", name + "-" + version)
+                            .put("namespace", project)
+                            .put("resourceVersion", version(rollout.lastChange(now)))
+                            .put("annotations", new JSONObject()
+                                    .put("openshift.io/deployment.phase", rollout.phase(now))))
+                    .put("spec", new JSONObject().put("replicas", rollout.replicas))
+                    .put("status", new JSONObject()
+                            .put("replicas", rollout.created(now))
+                            .put("readyReplicas", rollout.ready(now))));
+        }
+    }
+
+    /**
+     * Apply the JSON merge patch, or the strategic merge patch, on the object.
+     */
+    private static void merge(JSONObject target, JSONObject patch, boolean strategic) {
+        for (String key : patch.keySet()) {
+            if (key.startsWith("$")) continue;
+
+            Object value = patch.get(key);
+            Object current = target.opt(key);
+            if (value == JSONObject.NULL) target.remove(key);
+            else if (value instanceof JSONObject && current instanceof JSONObject) {
+                merge((JSONObject) current, (JSONObject) value, strategic);
+            }
+            else if (strategic && value instanceof JSONArray && current instanceof JSONArray && MERGE_KEYS.containsKey(key)) {
+                target.put(key, mergeList((JSONArray) current, (JSONArray) value, MERGE_KEYS.get(key)));
+            }
+            else target.put(key, value);
+        }
+    }
+
+    /**
+     * Merge the list items by the merge key, removing the items marked with $patch: delete.
+     */
+    private static JSONArray mergeList(JSONArray current, JSONArray patch, String mergeKey) {
+        JSONArray merged = new JSONArray(current.toString());
+        for (int i = 0; i < patch.length(); i++) {
+            JSONObject item = patch.optJSONObject(i);
+            if (item == null || ! item.has(mergeKey)) return patch;
+
+            int index = -1;
+            for (int j = 0; j < merged.length(); j++) {
+                if (String.valueOf(merged.getJSONObject(j).opt(mergeKey)).equals(String.valueOf(item.get(mergeKey)))) index = j;
+            }
+
+            if ("delete".equals(item.optString("$patch"))) {
+                if (index >= 0) merged.remove(index);
+            }
+            else if (index >= 0) merge(merged.getJSONObject(index), item, true);
+            else merged.put(item);
+        }
+
+        return merged;
+    }
+
+    /**
+     * Read the request body, decompressed when sent with gzip.
+     */
+    private static String body(RecordedRequest request) throws IOException {
+        Buffer body = request.getBody();
+        if ("gzip".equals(request.getHeader("Content-Encoding"))) {
+            return Okio.buffer(new GzipSource(body)).readUtf8();
+        }
+        return body.readUtf8();
+    }
+
+    /**
+     * Count the request by its operation, ex: "GET pods", "POST deploymentconfigs/instantiate".
+     */
+    private void count(String method, String path) {
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/")) if (! segment.isEmpty()) segments.add(segment);
+
+        if (! segments.isEmpty() && (segments.get(0).equals("api") || segments.get(0).equals("oapi"))) {
+            segments = segments.subList(Math.min(2, segments.size()), segments.size());
+        }
+        if (segments.size() >= 2 && segments.get(0).equals("namespaces")) {
+            segments = segments.subList(2, segments.size());
+        }
+
+        String resource = segments.isEmpty() ? "/" : segments.get(0);
+        if (segments.size() >= 3) resource = resource + "/" + segments.get(2);
+
+        String operation = method + " " + resource;
+        synchronized (requestCounts) {
+            Integer count = requestCounts.get(operation);
+            requestCounts.put(operation, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Return the time (in milliseconds) since the server started.
+     */
+    private long now() {
+        return System.currentTimeMillis() - epoch;
+    }
+
+    private static String version(long time) {
+        return String.valueOf(time + VERSION_OFFSET);
+    }
+
+    /**
+     * Return the time of the resourceVersion the watch starts from.
+     */
+    private static long since(String resourceVersion, long now) {
+        if (resourceVersion == null || ! resourceVersion.matches("[0-9]+")) return now;
+        return Long.parseLong(resourceVersion) - VERSION_OFFSET;
+    }
+
+    private static String event(String type, JSONObject object) {
+        return new JSONObject().put("type", type).put("object", object).toString();
+    }
+
+    private static void add(TreeMap<Long, List<String>> events, long time, String event) {
+        List<String> list = events.get(time);
+        if (list == null) events.put(time, list = new ArrayList<String>());
+        list.add(event);
+    }
+
+    /**
+     * Return the watch response streaming the events at their time. The body is cut
+     * on slots of the same size, one sent every WATCH_RESOLUTION by the throttle,
+     * each slot has the events of its time padded with a blank line. The stream
+     * ends after the last event, or at the timeout when there's none.
+     *
+     * @param events the event lines by time
+     * @param now current time
+     * @param until end of the watch
+     * @param latestOnly whether to send only the last event of each slot (the object state)
+     */
+    private static MockResponse stream(TreeMap<Long, List<String>> events, long now, long until, boolean latestOnly) {
+        MockResponse response = new MockResponse().setHeader("Content-Type", "application/json");
+        if (events.isEmpty()) {
+            return response.setBody("").setBodyDelay(Math.max(0, until - now), TimeUnit.MILLISECONDS);
+        }
+
+        int slots = (int) (Math.max(0, events.lastKey() - now) + WATCH_RESOLUTION - 1) / WATCH_RESOLUTION + 1;
+        List<StringBuilder> contents = new ArrayList<StringBuilder>();
+        for (int i = 0; i < slots; i++) contents.add(new StringBuilder());
+
+        for (Map.Entry<Long, List<String>> entry : events.entrySet()) {
+            int slot = (int) ((Math.max(0, entry.getKey() - now) + WATCH_RESOLUTION - 1) / WATCH_RESOLUTION);
+            StringBuilder content = contents.get(slot);
+            if (latestOnly) content.setLength(0);
+            for (String event : entry.getValue()) content.append(event).append('\n');
+        }
+
+        List<ByteString> parts = new ArrayList<ByteString>();
+        int size = 1;
+        for (StringBuilder content : contents) {
+            ByteString part = ByteString.encodeUtf8(content.toString());
+            parts.add(part);
+            size = Math.max(size, part.size() + 1);
+        }
+
+        Buffer body = new Buffer();
+        for (ByteString part : parts) {
+            body.write(part);
+            for (int i = part.size(); i < size - 1; i++) body.writeByte(' ');
+            body.writeByte('\n');
+        }
+
+        return response.setBody(body).throttleBody(size, WATCH_RESOLUTION, TimeUnit.MILLISECONDS);
+    }
+
+    private static MockResponse json(int code, JSONObject body) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json")
+                .setBody(body.toString());
+    }
+
+    private static MockResponse status(int code, String message) {
+        return json(code, new JSONObject()
+                .put("kind", "Status")
+                .put("apiVersion", "v1")
+                .put("status", "Failure")
+                .put("message", message)
+                .put("code", code));
+    }
+
+    /**
+     * A Deployment Configuration and its deployments.
+     */
+    private class DeploymentConfig {
+        final String project;
+        final String name;
+        final List<Rollout> rollouts = new ArrayList<Rollout>();
+        JSONObject spec;
+        JSONObject annotations = new JSONObject();
+        int generation = 1;
+        long changedAt = -VERSION_OFFSET / 2;
+
+        DeploymentConfig(String project, String name, JSONObject spec) {
+            this.project = project;
+            this.name = name;
+            this.spec = spec;
+        }
+
+        int replicas() {
+            return spec.optInt("replicas", 1);
+        }
+
+        Rollout latest() {
+            return rollouts.get(rollouts.size() - 1);
+        }
+
+        /**
+         * Start a new deployment with the current scenario.
+         */
+        void deploy(long now) {
+            rollouts.add(new Rollout(rollouts.size() + 1, now, replicas(), podInterval, podStartTime,
+                    Math.min(failingPods, replicas())));
+            changedAt = now;
+        }
+
+        /**
+         * Apply the desired object, deploying when the template changed (ConfigChange
+         * trigger) or the latestVersion was incremented.
+         */
+        void update(JSONObject desired, long now) {
+            JSONObject desiredSpec = desired.getJSONObject("spec");
+            boolean changed = ! same(spec, desiredSpec);
+            boolean templateChanged = ! same(spec.opt("template"), desiredSpec.opt("template"));
+
+            JSONObject status = desired.optJSONObject("status");
+            int latestVersion = status != null ? status.optInt("latestVersion", rollouts.size()) : rollouts.size();
+
+            if (changed) {
+                spec = new JSONObject(desiredSpec.toString());
+                generation += 1;
+                changedAt = now;
+            }
+
+            // the annotations are kept, like the last applied configuration of the plugin.
+            JSONObject metadata = desired.optJSONObject("metadata");
+            JSONObject desiredAnnotations = metadata != null ? metadata.optJSONObject("annotations") : null;
+            if (desiredAnnotations == null) desiredAnnotations = new JSONObject();
+            if (! same(annotations, desiredAnnotations)) {
+                annotations = new JSONObject(desiredAnnotations.toString());
+                changedAt = now;
+            }
+
+            if (latestVersion > rollouts.size() || (templateChanged && hasConfigChangeTrigger())) deploy(now);
+        }
+
+        boolean same(Object live, Object desired) {
+            if (live == null || desired == null) return live == desired;
+            return JsonDiff.contains(live, desired) && JsonDiff.contains(desired, live);
+        }
+
+        boolean hasConfigChangeTrigger() {
+            JSONArray triggers = spec.optJSONArray("triggers");
+            for (int i = 0; triggers != null && i < triggers.length(); i++) {
+                JSONObject trigger = triggers.optJSONObject(i);
+                if (trigger != null && "ConfigChange".equals(trigger.optString("type"))) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Return the times when the object changes: the updates and the pods of the latest deployment.
+         */
+        List<Long> changes() {
+            List<Long> changes = latest().changes();
+            changes.add(changedAt);
+            return changes;
+        }
+
+        long lastChange(long time) {
+            long last = changedAt <= time ? changedAt : -VERSION_OFFSET / 2;
+            return Math.max(last, latest().lastChange(time));
+        }
+
+        /**
+         * Return the object as seen at the given time.
+         */
+        JSONObject toJSON(long time) {
+            Rollout rollout = latest();
+            int replicas = replicas();
+            int available = rollout.ready(time);
+            boolean failed = rollout.phase(time).equals("Failed");
+
+            return new JSONObject()
+                    .put("kind", "DeploymentConfig")
+                    .put("apiVersion", "v1")
+                    .put("metadata", new JSONObject()
+                            .put("name", name)
+                            .put("namespace", project)
+                            .put("resourceVersion", version(lastChange(time)))
+                            .put("generation", generation)
+                            .put("creationTimestamp", "2017-06-01T10:00:00Z")
+                            .put("annotations", new JSONObject(annotations.toString())))
+                    .put("spec", new JSONObject(spec.toString()))
+                    .put("status", new JSONObject()
+                            .put("latestVersion", rollout.version)
+                            .put("observedGeneration", generation)
+                            .put("replicas", replicas)
+                            .put("updatedReplicas", rollout.created(time))
+                            .put("availableReplicas", available)
+                            .put("readyReplicas", available)
+                            .put("unavailableReplicas", Math.max(0, replicas - available))
+                            .put("conditions", new JSONArray().put(new JSONObject()
+                                    .put("type", "Progressing")
+                                    .put("status", failed ? "False" : "True")
+                                    .put("reason", failed ? "ProgressDeadlineExceeded"
+                                            : available >= replicas ? "NewReplicationControllerAvailable"
+                                            : "ReplicationControllerUpdated")
+                                    .put("message", failed
+                                            ? String.format("replication controller \"%s-%d\" has failed progressing", name, rollout.version)
+                                            : String.format("replication controller \"%s-%d\" is progressing", name, rollout.version)))));
+        }
+    }
+
+    /**
+     * A deployment: the pods are created every interval, and are ready
+     * (or failed, the last ones) after the start time.
+     */
+    private static class Rollout {
+        final int version;
+        final long startedAt;
+        final int replicas;
+        final long interval;
+        final long startTime;
+        final int failing;
+
+        Rollout(int version, long startedAt, int replicas, long interval, long startTime, int failing) {
+            this.version = version;
+            this.startedAt = startedAt;
+            this.replicas = replicas;
+            this.interval = interval;
+            this.startTime = startTime;
+            this.failing = failing;
+        }
+
+        long createdAt(int pod) {
+            return startedAt + pod * interval;
+        }
+
+        long finishedAt(int pod) {
+            return createdAt(pod) + startTime;
+        }
+
+        boolean fails(int pod) {
+            return pod >= replicas - failing;
+        }
+
+        int created(long time) {
+            int count = 0;
+            for (int i = 0; i < replicas; i++) if (createdAt(i) <= time) count += 1;
+            return count;
+        }
+
+        int ready(long time) {
+            int count = 0;
+            for (int i = 0; i < replicas; i++) if (! fails(i) && finishedAt(i) <= time) count += 1;
+            return count;
+        }
+
+        String phase(long time) {
+            for (int i = 0; i < replicas; i++) if (fails(i) && finishedAt(i) <= time) return "Failed";
+            if (ready(time) >= replicas) return "Complete";
+            return time >= startedAt ? "Running" : "New";
+        }
+
+        List<Long> changes() {
+            List<Long> changes = new ArrayList<Long>();
+            changes.add(startedAt);
+            for (int i = 0; i < replicas; i++) {
+                changes.add(createdAt(i));
+                changes.add(finishedAt(i));
+            }
+            return changes;
+        }
+
+        long lastChange(long time) {
+            long last = -VERSION_OFFSET / 2;
+            for (long change : changes()) if (change <= time && change > last) last = change;
+            return last;
+        }
+
+        /**
+         * Return the pod as seen at the given time, null when not created yet.
+         */
+        JSONObject pod(DeploymentConfig config, int pod, long time) {
+            if (createdAt(pod) > time) return null;
+
+            boolean finished = finishedAt(pod) <= time;
+            boolean ready = finished && ! fails(pod);
+            String phase = ! finished ? "Pending" : fails(pod) ? "Failed" : "Running";
+
+            JSONObject state = ! finished
+                    ? new JSONObject().put("waiting", new JSONObject().put("reason", "ContainerCreating"))
+                    : fails(pod)
+                    ? new JSONObject().put("terminated", new JSONObject().put("reason", "Error").put("exitCode", 1))
+                    : new JSONObject().put("running", new JSONObject().put("startedAt", "2017-06-01T10:00:00Z"));
+
+            return new JSONObject()
+                    .put("kind", "Pod")
+                    .put("apiVersion", "v1")
+                    .put("metadata", new JSONObject()
+                            .put("name", String.format("%s-%d-%d", config.name, version, pod))
+                            .put("namespace", config.project)
+                            .put("resourceVersion", version(finished ? finishedAt(pod) : createdAt(pod)))
+                            .put("labels", new JSONObject()
+                                    .put("deployment", config.name + "-" + version)
+                                    .put("deploymentconfig", config.name)))
+                    .put("status", new JSONObject()
+                            .put("phase", phase)
+                            .put("conditions", new JSONArray()
+                                    .put(new JSONObject().put("type", "Initialized").put("status", "True"))
+                                    .put(new JSONObject().put("type", "Ready").put("status", ready ? "True" : "False")))
+                            .put("containerStatuses", new JSONArray().put(new JSONObject()
+                                    .put("name", config.name)
+                                    .put("ready", ready)
+                                    .put("restartCount", fails(pod) && finished ? 1 : 0)
+                                    .put("state", state))));
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic inputs of the benchmarks, shaped like the manifests, variables
+ * and pod lists of the services deployed by the plugin.
+ */
+public class Fixtures {
+
+    /**
+     * Return a rendered DeploymentConfig manifest with the given number of containers,
+     * each one with environment variables, ports, probes, resources and volumes.
+     *
+     * @param containers number of containers
+     * @return the YAML manifest
+     */
+    public static String manifest(int containers) {
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("apiVersion: v1\n")
+            .append("kind: DeploymentConfig\n")
+            .append("metadata:\n")
+            .append("  name: payments-api\n")
+            .append("  labels:\n")
+            .append("    app: payments-api\n")
+            .append("    team: checkout\n")
+            .append("spec:\n")
+            .append("  replicas: 3\n")
+            .append("  revisionHistoryLimit: 5\n")
+            .append("  selector:\n")
+            .append("    app: payments-api\n")
+            .append("    deploymentconfig: payments-api\n")
+            .append("  strategy:\n")
+            .append("    type: Rolling\n")
+            .append("    rollingParams:\n")
+            .append("      maxSurge: 25%\n")
+            .append("      maxUnavailable: 0\n")
+            .append("      timeoutSeconds: 600\n")
+            .append("  triggers:\n")
+            .append("    - type: ConfigChange\n")
+            .append("  template:\n")
+            .append("    metadata:\n")
+            .append("      labels:\n")
+            .append("        app: payments-api\n")
+            .append("        deploymentconfig: payments-api\n")
+            .append("      annotations:\n")
+            .append("        prometheus.io/scrape: \"true\"\n")
+            .append("        prometheus.io/port: \"9102\"\n")
+            .append("    spec:\n")
+            .append("      terminationGracePeriodSeconds: 30\n")
+            .append("      containers:\n");
+
+        for (int i = 0; i < containers; i++) {
+            yaml.append("        - name: container-").append(i).append('\n')
+                .append("          image: registry.example.com/checkout/payments-api:1.4.").append(i).append('\n')
+                .append("          imagePullPolicy: IfNotPresent\n")
+                .append("          ports:\n")
+                .append("            - containerPort: ").append(8080 + i).append('\n')
+                .append("              protocol: TCP\n")
+                .append("          env:\n");
+            for (int j = 0; j < 10; j++) {
+                yaml.append("            - name: SETTING_").append(j).append('\n')
+                    .append("              value: \"value-").append(j).append("\"\n");
+            }
+            yaml.append("          resources:\n")
+                .append("            limits:\n")
+                .append("              cpu: 500m\n")
+                .append("              memory: 512Mi\n")
+                .append("            requests:\n")
+                .append("              cpu: 100m\n")
+                .append("              memory: 256Mi\n")
+                .append("          readinessProbe:\n")
+                .append("            httpGet:\n")
+                .append("              path: /health\n")
+                .append("              port: ").append(8080 + i).append('\n')
+                .append("            initialDelaySeconds: 10\n")
+                .append("            timeoutSeconds: 2\n")
+                .append("          securityContext:\n")
+                .append("            privileged: false\n")
+                .append("          volumeMounts:\n")
+                .append("            - name: config\n")
+                .append("              mountPath: /etc/payments\n");
+        }
+
+        yaml.append("      volumes:\n")
+            .append("        - name: config\n")
+            .append("          configMap:\n")
+            .append("            name: payments-api\n");
+
+        return yaml.toString();
+    }
+
+    /**
+     * Return a Jtwig DeploymentConfig template, filled by the vars
+     * file and the rundeck job options like the templates on the repositories.
+     */
+    public static String template() {
+        return "apiVersion: v1\n"
+             + "kind: DeploymentConfig\n"
+             + "metadata:\n"
+             + "  name: {{ rundeck.plugin.openshift_service }}\n"
+             + "  labels:\n"
+             + "    app: {{ rundeck.plugin.openshift_service }}\n"
+             + "    team: {{ vars.team }}\n"
+             + "spec:\n"
+             + "  replicas: {{ vars.replicas }}\n"
+             + "  selector:\n"
+             + "    app: {{ rundeck.plugin.openshift_service }}\n"
+             + "  strategy:\n"
+             + "    type: Rolling\n"
+             + "  template:\n"
+             + "    metadata:\n"
+             + "      labels:\n"
+             + "        app: {{ rundeck.plugin.openshift_service }}\n"
+             + "    spec:\n"
+             + "      containers:\n"
+             + "        - name: {{ rundeck.plugin.openshift_service }}\n"
+             + "          image: {{ vars.registry }}/{{ rundeck.plugin.openshift_service }}:{{ rundeck.option.version }}\n"
+             + "          ports:\n"
+             + "            - containerPort: {{ vars.port }}\n"
+             + "          env:\n"
+             + "{% for item in vars.env %}"
+             + "            - name: {{ item.name }}\n"
+             + "              value: \"{{ item.value }}\"\n"
+             + "{% endfor %}"
+             + "          resources:\n"
+             + "            limits:\n"
+             + "              cpu: {{ vars.cpu }}\n"
+             + "              memory: {{ vars.memory }}\n"
+             + "{% if vars.probe %}"
+             + "          readinessProbe:\n"
+             + "            httpGet:\n"
+             + "              path: {{ vars.probe }}\n"
+             + "              port: {{ vars.port }}\n"
+             + "{% endif %}";
+    }
+
+    /**
+     * Return the variables of the template, as read from the vars file.
+     *
+     * @param envVars number of environment variables
+     */
+    public static Map<String, Object> vars(int envVars) {
+        Map<String, Object> vars = new HashMap<String, Object>();
+        vars.put("team", "checkout");
+        vars.put("replicas", "3");
+        vars.put("registry", "registry.example.com/checkout");
+        vars.put("port", "8080");
+        vars.put("cpu", "500m");
+        vars.put("memory", "512Mi");
+        vars.put("probe", "/health");
+
+        List<Map<String, String>> env = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < envVars; i++) {
+            Map<String, String> item = new HashMap<String, String>();
+            item.put("name", "SETTING_" + i);
+            item.put("value", "value-" + i);
+            env.add(item);
+        }
+        vars.put("env", env);
+
+        return vars;
+    }
+
+    /**
+     * Return the vars file of the template, with the same variables as vars().
+     *
+     * @param replicas number of replicas of the service
+     * @param envVars number of environment variables
+     * @return the YAML vars file
+     */
+    public static String varsFile(int replicas, int envVars) {
+        StringBuilder yaml = new StringBuilder();
+        yaml.append("team: checkout\n")
+            .append("replicas: ").append(replicas).append('\n')
+            .append("registry: registry.example.com/checkout\n")
+            .append("port: 8080\n")
+            .append("cpu: 500m\n")
+            .append("memory: 512Mi\n")
+            .append("probe: /health\n")
+            .append("env:\n");
+
+        for (int i = 0; i < envVars; i++) {
+            yaml.append("  - name: SETTING_").append(i).append('\n')
+                .append("    value: value-").append(i).append('\n');
+        }
+
+        return yaml.toString();
+    }
+
+    /**
+     * Return the rundeck variables given to the template.
+     */
+    public static Map<String, Object> rundeckVars() {
+        Map<String, Object> plugin = new HashMap<String, Object>();
+        plugin.put("openshift_service", "payments-api");
+        plugin.put("openshift_project", "checkout");
+
+        Map<String, Object> option = new HashMap<String, Object>();
+        option.put("version", "1.4.2");
+
+        Map<String, Object> rundeck = new HashMap<String, Object>();
+        rundeck.put("plugin", plugin);
+        rundeck.put("option", option);
+        return rundeck;
+    }
+
+    /**
+     * Return the pod list of a deployment, as answered by the Openshift API.
+     * Every tenth pod is pending, the others running and ready.
+     *
+     * @param pods number of pods
+     * @return the JSON pod list
+     */
+    public static String podList(int pods) {
+        StringBuilder json = new StringBuilder(pods * 1600);
+        json.append("{\"kind\":\"PodList\",\"apiVersion\":\"v1\",")
+            .append("\"metadata\":{\"selfLink\":\"/api/v1/namespaces/checkout/pods\",\"resourceVersion\":\"918273\"},")
+            .append("\"items\":[");
+
+        for (int i = 0; i < pods; i++) {
+            boolean pending = i % 10 == 9;
+            if (i > 0) json.append(',');
+
+            json.append("{\"metadata\":{\"name\":\"payments-api-7-").append(i).append("\",")
+                .append("\"namespace\":\"checkout\",\"uid\":\"4f1c2a4e-").append(i).append("\",")
+                .append("\"labels\":{\"app\":\"payments-api\",\"deployment\":\"payments-api-7\",")
+                .append("\"deploymentconfig\":\"payments-api\"},")
+                .append("\"annotations\":{\"openshift.io/deployment-config.latest-version\":\"7\",")
+                .append("\"openshift.io/scc\":\"restricted\"}},")
+                .append("\"spec\":{\"containers\":[{\"name\":\"payments-api\",")
+                .append("\"image\":\"registry.example.com/checkout/payments-api:1.4.2\",")
+                .append("\"ports\":[{\"containerPort\":8080,\"protocol\":\"TCP\"}],")
+                .append("\"env\":[{\"name\":\"SETTING_0\",\"value\":\"value-0\"},{\"name\":\"SETTING_1\",\"value\":\"value-1\"}],")
+                .append("\"resources\":{\"limits\":{\"cpu\":\"500m\",\"memory\":\"512Mi\"}}}],")
+                .append("\"nodeName\":\"node-").append(i % 50).append("\"},")
+                .append("\"status\":{\"phase\":\"").append(pending ? "Pending" : "Running").append("\",")
+                .append("\"conditions\":[")
+                .append("{\"type\":\"Initialized\",\"status\":\"True\"},")
+                .append("{\"type\":\"Ready\",\"status\":\"").append(pending ? "False" : "True").append("\"},")
+                .append("{\"type\":\"PodScheduled\",\"status\":\"True\"}],")
+                .append("\"hostIP\":\"10.0.0.").append(i % 250).append("\",")
+                .append("\"containerStatuses\":[{\"name\":\"payments-api\",\"ready\":").append(! pending)
+                .append(",\"restartCount\":0,\"state\":")
+                .append(pending
+                        ? "{\"waiting\":{\"reason\":\"ContainerCreating\"}}"
+                        : "{\"running\":{\"startedAt\":\"2017-06-01T10:00:00Z\"}}")
+                .append("}]}}");
+        }
+
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.PodListReader;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluation of the pod list on the pods readiness mode (OpenshiftClient.notReady).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ReadinessBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int pods;
+
+    private String podList;
+
+    @Setup
+    public void setup() {
+        podList = Fixtures.podList(pods);
+    }
+
+    /**
+     * Stream the pod list keeping only the pod status, as done by the step.
+     */
+    @Benchmark
+    public int[] streaming() throws Exception {
+        return PodListReader.countReplicas(new StringReader(podList));
+    }
+
+    /**
+     * Parse the whole pod list before counting the replicas, as before the streaming reader.
+     */
+    @Benchmark
+    public int[] tree() {
+        int[] counts = new int[3];
+        JSONArray items = new JSONObject(podList).getJSONArray("items");
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject status = items.getJSONObject(i).getJSONObject("status");
+            String phase = status.optString("phase");
+
+            boolean ready = false;
+            JSONArray conditions = status.optJSONArray("conditions");
+            for (int j = 0; conditions != null && j < conditions.length(); j++) {
+                JSONObject condition = conditions.getJSONObject(j);
+                if (condition.optString("type").equals("Ready")) ready = condition.optString("status").equals("True");
+            }
+
+            if (phase.equals("Pending")) counts[1] += 1;
+            else if (phase.equals("Running") && ready) counts[0] += 1;
+            else if (phase.equals("Failed")) counts[2] += 1;
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.OpenshiftClient;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.ReadinessMode;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.RolloutWatcher;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.YamlConverter;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rollout of a service against the FakeOpenshiftServer, from the update of the
+ * Deployment Configuration until all the replicas are ready, tracked with the
+ * watch or by polling on each readiness mode. The API calls of each rollout
+ * are reported as the apiCalls counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RolloutBenchmark {
+
+    // Interval (in milliseconds) between the readiness checks when polling.
+    private static final long POLL_INTERVAL = 250;
+
+    @Param({"watch", "pods", "replication-controller", "deployment-config"})
+    public String tracking;
+
+    @Param({"1", "10", "50"})
+    public int replicas;
+
+    @Param({"0", "20"})
+    public long latency;
+
+    private FakeOpenshiftServer server;
+    private OpenshiftClient client;
+    private int release;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Calls {
+        public long apiCalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            apiCalls = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        JSONObject manifest = YamlConverter.toJSON(Fixtures.manifest(1));
+        manifest.getJSONObject("spec").put("replicas", replicas);
+
+        server = new FakeOpenshiftServer()
+                .withLatency(latency)
+                .withPodStartTime(300)
+                .withPodInterval(20)
+                .withDeploymentConfig("checkout", manifest)
+                .start();
+
+        client = new OpenshiftClient()
+                .withServerUrl(server.getUrl())
+                .withApiVersion("v1")
+                .withProject("checkout")
+                .withService("payments-api")
+                .withToken("fake-token")
+                .withReadinessMode(ReadinessMode.fromString(tracking.equals("watch") ? "pods" : tracking))
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Benchmark
+    public int rollout(Calls calls) throws Exception {
+        int before = server.getRequestCount();
+
+        // change the image, deployed by the ConfigChange trigger.
+        JSONObject current = client.getDeploymentConfig();
+        JSONObject desired = new JSONObject(current.toString());
+        desired.getJSONObject("spec").getJSONObject("template").getJSONObject("spec")
+                .getJSONArray("containers").getJSONObject(0)
+                .put("image", "registry.example.com/checkout/payments-api:2." + (++release));
+
+        JSONObject updated = client.updateDeploymentConfig(current, desired);
+        int version = updated.getJSONObject("status").getInt("latestVersion");
+
+        if (tracking.equals("watch")) {
+            RolloutWatcher.Result result = new RolloutWatcher(client).await(60000);
+            if (result != RolloutWatcher.Result.COMPLETED)
+                throw new Exception("The rollout was not completed: " + result);
+        }
+        else {
+            while (client.notReady(version)) Thread.sleep(POLL_INTERVAL);
+        }
+
+        calls.apiCalls += server.getRequestCount() - before;
+        return version;
+    }
+}
@@ -0,0 +1,625 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import br.com.raffs.rundeck.plugin.Deployment;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.YamlConverter;
+import com.dtolabs.rundeck.plugins.descriptions.PluginProperty;
+import com.dtolabs.rundeck.plugins.step.PluginStepContext;
+import org.eclipse.jgit.api.Git;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Soak test of the plugin, running N executeStep() at the same time on one JVM like
+ * the concurrent jobs on a Rundeck server, against the FakeOpenshiftServer and a local
+ * git repository. Each level of N reports the heap high-water mark, the allocation
+ * rate, the live threads, the open sockets and the cache directory usage, and fails
+ * when one of the given limits is exceeded, ex:
+ *
+ *   java -cp target/benchmarks.jar br.com.raffs.rundeck.plugin.benchmarks.SoakHarness \
+ *        --jobs=1,10,25,50 --rounds=3 --max-heap-mb=512 --max-threads=400
+ */
+public class SoakHarness {
+
+    // Interval (in milliseconds) between the samples of the resources.
+    private static final long SAMPLE_INTERVAL = 100;
+
+    // Time (in milliseconds) given to the jobs resources to be released after each level.
+    private static final long SETTLE_TIME = 2000;
+
+    private static final String PROJECT = "checkout";
+
+    private static final long MB = 1024L * 1024L;
+
+    // Options of the run.
+    private final List<Integer> levels = new ArrayList<Integer>();
+    private int rounds = 3;
+    private int replicas = 3;
+    private long latency = 20;
+    private double errorRate = 0;
+    private long maxHeap = 0;
+    private int maxThreads = 0;
+    private int maxSockets = 0;
+    private String result = "soak-result.json";
+    private File workDir;
+    private final Map<String, String> settings = new HashMap<String, String>();
+
+    private FakeOpenshiftServer server;
+    private String repository;
+    private final Sampler sampler = new Sampler();
+    private int release;
+
+    public static void main(String[] args) throws Exception {
+        SoakHarness harness = new SoakHarness();
+        harness.parse(args);
+
+        int status = harness.run();
+        System.exit(status);
+    }
+
+    /**
+     * Parse the --name=value options.
+     */
+    private void parse(String[] args) throws Exception {
+        String jobs = "1,5,10,25";
+        for (String arg : args) {
+            if (! arg.startsWith("--") || ! arg.contains("="))
+                throw new Exception(String.format("Unknown option: %s, expecting --name=value", arg));
+
+            String name = arg.substring(2, arg.indexOf('='));
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (name.equals("jobs")) jobs = value;
+            else if (name.equals("rounds")) rounds = Integer.parseInt(value);
+            else if (name.equals("replicas")) replicas = Integer.parseInt(value);
+            else if (name.equals("latency")) latency = Long.parseLong(value);
+            else if (name.equals("error-rate")) errorRate = Double.parseDouble(value);
+            else if (name.equals("max-heap-mb")) maxHeap = Long.parseLong(value) * MB;
+            else if (name.equals("max-threads")) maxThreads = Integer.parseInt(value);
+            else if (name.equals("max-sockets")) maxSockets = Integer.parseInt(value);
+            else if (name.equals("result")) result = value;
+            else if (name.equals("work-dir")) workDir = new File(value);
+            else if (name.equals("set")) {
+                // plugin property, by the field name, ex: --set=readiness_mode=watch
+                if (! value.contains("="))
+                    throw new Exception(String.format("Expecting --set=field=value, got: %s", value));
+                settings.put(value.substring(0, value.indexOf('=')), value.substring(value.indexOf('=') + 1));
+            }
+            else throw new Exception(String.format("Unknown option: --%s", name));
+        }
+
+        for (String name : settings.keySet()) {
+            try {
+                Deployment.class.getDeclaredField(name);
+            }
+            catch (NoSuchFieldException ex) {
+                throw new Exception(String.format("Unknown plugin property: %s", name));
+            }
+        }
+
+        for (String level : jobs.split(",")) levels.add(Integer.parseInt(level.trim()));
+        if (workDir == null) workDir = Files.createTempDirectory("ocdepl-soak-").toFile();
+    }
+
+    /**
+     * Run every level, returning the exit status.
+     */
+    private int run() throws Exception {
+        int services = Collections.max(levels);
+        createRepository(services);
+
+        server = new FakeOpenshiftServer()
+                .withLatency(latency)
+                .withErrorRate(errorRate, 503)
+                .withPodStartTime(300)
+                .withPodInterval(20);
+        for (int i = 0; i < services; i++) {
+            JSONObject manifest = YamlConverter.toJSON(Fixtures.manifest(1));
+            manifest.getJSONObject("metadata").put("name", service(i));
+            manifest.getJSONObject("spec").put("replicas", replicas);
+            server.withDeploymentConfig(PROJECT, manifest);
+        }
+        server.start();
+        sampler.serverPort = new URL(server.getUrl()).getPort();
+        sampler.cacheDir = new File(workDir, "cache");
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "soak-sampler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleAtFixedRate(sampler, 0, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+
+        PrintStream out = System.out;
+        PrintStream steps = new PrintStream(new FileOutputStream(new File(workDir, "steps.log")), true);
+        System.out.println(String.format("Soak test on %s, the step output is written on steps.log", workDir));
+
+        JSONArray report = new JSONArray();
+        List<String> violations = new ArrayList<String>();
+        try {
+            // the first job loads the classes and creates the git mirror, out of the measures.
+            System.setOut(steps);
+            runJobs(1);
+            System.setOut(out);
+
+            Level baseline = settle();
+            System.out.println(String.format(
+                    "Baseline: heap %d MB, %d threads, %d sockets, %d KB on disk",
+                    baseline.heapRetained / MB, baseline.threadsAfter, baseline.socketsAfter, baseline.diskAfter / 1024));
+            System.out.println(String.format("%6s %9s %7s %9s %10s %10s %10s %8s %8s %8s %8s %8s %8s",
+                    "jobs", "time_ms", "failed", "api_calls", "heap_mb", "retain_mb", "alloc_mb/s",
+                    "threads", "thr_after", "sockets", "sck_after", "fds", "disk_kb"));
+
+            for (int jobs : levels) {
+                Level level = runLevel(jobs, steps, out);
+                System.out.println(String.format("%6d %9d %7d %9d %10d %10d %10.1f %8d %8d %8d %8d %8d %8d",
+                        jobs, level.time, level.failed, level.apiCalls, level.heapPeak / MB, level.heapRetained / MB,
+                        level.allocRate / MB, level.threadsPeak, level.threadsAfter, level.socketsPeak,
+                        level.socketsAfter, level.fdsPeak, level.diskPeak / 1024));
+
+                report.put(level.toJSON());
+                if (level.failed > 0)
+                    violations.add(String.format("%d of the %d jobs failed with %d concurrent jobs, see steps.log",
+                            level.failed, jobs * rounds, jobs));
+                if (maxHeap > 0 && level.heapPeak > maxHeap)
+                    violations.add(String.format("heap reached %d MB with %d concurrent jobs, the limit is %d MB",
+                            level.heapPeak / MB, jobs, maxHeap / MB));
+                if (maxThreads > 0 && level.threadsPeak > maxThreads)
+                    violations.add(String.format("%d threads with %d concurrent jobs, the limit is %d",
+                            level.threadsPeak, jobs, maxThreads));
+                if (maxSockets > 0 && level.socketsPeak > maxSockets)
+                    violations.add(String.format("%d sockets with %d concurrent jobs, the limit is %d",
+                            level.socketsPeak, jobs, maxSockets));
+            }
+        }
+        finally {
+            System.setOut(out);
+            steps.close();
+            scheduler.shutdownNow();
+            server.close();
+        }
+
+        Files.write(new File(result).toPath(), report.toString(2).getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written on " + result);
+
+        for (String violation : violations) System.out.println("FAILED: " + violation);
+        return violations.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Run the rounds of N concurrent jobs, measuring the resources used.
+     */
+    private Level runLevel(int jobs, PrintStream steps, PrintStream out) throws Exception {
+        server.resetRequestCounts();
+        sampler.reset();
+
+        long allocatedAt = sampler.allocated();
+        long startedAt = System.currentTimeMillis();
+        int failed = 0;
+
+        System.setOut(steps);
+        try {
+            for (int round = 0; round < rounds; round++) failed += runJobs(jobs);
+        }
+        finally {
+            System.setOut(out);
+        }
+
+        long time = System.currentTimeMillis() - startedAt;
+        long allocated = sampler.allocated() - allocatedAt;
+
+        // the peaks are taken before the idle connections and threads are released.
+        Level level = settle();
+        level.jobs = jobs;
+        level.time = time;
+        level.failed = failed;
+        level.apiCalls = server.getRequestCount();
+        level.allocRate = allocated * 1000.0 / Math.max(1, time);
+        return level;
+    }
+
+    /**
+     * Wait the resources of the finished jobs to be released, and measure what is left.
+     */
+    private Level settle() throws Exception {
+        Level level = new Level();
+        level.heapPeak = sampler.heapPeak;
+        level.threadsPeak = sampler.threadsPeak;
+        level.socketsPeak = sampler.socketsPeak;
+        level.fdsPeak = sampler.fdsPeak;
+        level.diskPeak = sampler.diskPeak;
+
+        Thread.sleep(SETTLE_TIME);
+        System.gc();
+
+        level.heapRetained = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        level.threadsAfter = Sampler.threads();
+        level.socketsAfter = sampler.sockets();
+        level.diskAfter = Sampler.size(sampler.cacheDir);
+        return level;
+    }
+
+    /**
+     * Run N jobs at the same time, each one deploying its own service.
+     *
+     * @return the number of failed jobs
+     */
+    private int runJobs(int jobs) throws Exception {
+        final String version = "2." + (++release);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failed = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < jobs; i++) {
+            final Deployment step = step(service(i));
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        step.executeStep(context(version), new HashMap<String, Object>());
+                    }
+                    catch (Exception ex) {
+                        System.out.println(String.format("[%s] FAILED: %s", Thread.currentThread().getName(), ex.getMessage()));
+                        failed.incrementAndGet();
+                    }
+                }
+            }, "soak-job-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) thread.join();
+
+        return failed.get();
+    }
+
+    /**
+     * Return the step of the service, with the properties set like Rundeck does:
+     * the default values, overridden by the framework and job properties.
+     */
+    private Deployment step(String service) throws Exception {
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("gitlab_repo", repository);
+        properties.put("gitlab_branch", "master");
+        properties.put("gitlab_username", "soak");
+        properties.put("gitlab_password", "soak");
+        properties.put("gitlab_variables_dir", "vars");
+        properties.put("gitlab_deployment_file", "deployment");
+        properties.put("cache_directory", new File(workDir, "cache").getAbsolutePath());
+        properties.put("openshift_server", server.getUrl());
+        properties.put("openshift_apiversion", "v1");
+        properties.put("openshift_token", "fake-token");
+        properties.put("openshift_project", PROJECT);
+        properties.put("openshift_service", service);
+        properties.put("gitlab_deployment_environment", "dev");
+        properties.put("gitlab_deployment_directory", "services/" + service);
+        properties.putAll(settings);
+
+        Deployment step = new Deployment();
+        for (Field field : Deployment.class.getDeclaredFields()) {
+            PluginProperty property = field.getAnnotation(PluginProperty.class);
+            String value = properties.containsKey(field.getName()) ? properties.get(field.getName())
+                    : property != null ? property.defaultValue() : null;
+            if (value == null || value.isEmpty()) continue;
+
+            field.setAccessible(true);
+            if (field.getType() == int.class) field.setInt(step, Integer.parseInt(value));
+            else if (field.getType() == boolean.class) field.setBoolean(step, Boolean.parseBoolean(value));
+            else if (field.getType() == String.class) field.set(step, value);
+        }
+
+        return step;
+    }
+
+    /**
+     * Return the step context of the job, with the version option.
+     */
+    private static PluginStepContext context(String version) {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("version", version);
+
+        final HashMap<String, Map<String, String>> data = new HashMap<String, Map<String, String>>();
+        data.put("option", options);
+
+        return (PluginStepContext) Proxy.newProxyInstance(
+                SoakHarness.class.getClassLoader(),
+                new Class<?>[] { PluginStepContext.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getDataContext")) return data;
+                        if (method.getName().equals("getFrameworkProject")) return PROJECT;
+                        if (method.getName().equals("getStepNumber")) return 1;
+                        if (method.getName().equals("toString")) return "soak step context";
+                        if (method.getReturnType() == int.class) return 0;
+                        if (method.getReturnType() == boolean.class) return false;
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Create the git repository with the template and vars file of each service.
+     */
+    private void createRepository(int services) throws Exception {
+        File dir = new File(workDir, "repository");
+        Git git = Git.init().setDirectory(dir).call();
+        try {
+            for (int i = 0; i < services; i++) {
+                File service = new File(dir, "services/" + service(i));
+                new File(service, "vars").mkdirs();
+                Files.write(new File(service, "deployment.yml").toPath(),
+                        (Fixtures.template() + "status:\n  latestVersion: 0\n").getBytes(StandardCharsets.UTF_8));
+                Files.write(new File(service, "vars/dev.yml").toPath(),
+                        Fixtures.varsFile(replicas, 10).getBytes(StandardCharsets.UTF_8));
+            }
+
+            git.add().addFilepattern("services").call();
+            git.commit().setMessage("soak services").setAuthor("soak", "soak@example.com").call();
+        }
+        finally {
+            git.close();
+        }
+
+        repository = dir.toURI().toString();
+    }
+
+    private static String service(int i) {
+        return String.format("service-%d", i);
+    }
+
+    /**
+     * Resources measured on a level.
+     */
+    private static class Level {
+        int jobs;
+        long time;
+        int failed;
+        int apiCalls;
+        long heapPeak;
+        long heapRetained;
+        double allocRate;
+        int threadsPeak;
+        int threadsAfter;
+        int socketsPeak;
+        int socketsAfter;
+        long fdsPeak;
+        long diskPeak;
+        long diskAfter;
+
+        JSONObject toJSON() {
+            Map<String, Object> values = new LinkedHashMap<String, Object>();
+            values.put("jobs", jobs);
+            values.put("time_ms", time);
+            values.put("failed", failed);
+            values.put("api_calls", apiCalls);
+            values.put("heap_peak_bytes", heapPeak);
+            values.put("heap_retained_bytes", heapRetained);
+            values.put("alloc_rate_bytes_per_sec", Math.round(allocRate));
+            values.put("threads_peak", threadsPeak);
+            values.put("threads_after", threadsAfter);
+            values.put("sockets_peak", socketsPeak);
+            values.put("sockets_after", socketsAfter);
+            values.put("fds_peak", fdsPeak);
+            values.put("disk_peak_bytes", diskPeak);
+            values.put("disk_after_bytes", diskAfter);
+            return new JSONObject(values);
+        }
+    }
+
+    /**
+     * Sample the resources used by the plugin, keeping the peak values. The threads and
+     * sockets of the fake server, running on the same JVM, are not counted.
+     */
+    private static class Sampler implements Runnable, NotificationListener {
+
+        int serverPort;
+        File cacheDir;
+
+        volatile long heapPeak;
+        volatile int threadsPeak;
+        volatile int socketsPeak;
+        volatile long fdsPeak;
+        volatile long diskPeak;
+
+        // bytes released by the collections, to compute the allocated bytes.
+        private final AtomicLong collected = new AtomicLong();
+        private final Set<String> heapPools = new HashSet<String>();
+
+        Sampler() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) heapPools.add(pool.getName());
+            }
+
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter)
+                    ((NotificationEmitter) gc).addNotificationListener(this, null, null);
+            }
+        }
+
+        synchronized void reset() {
+            heapPeak = 0;
+            threadsPeak = 0;
+            socketsPeak = 0;
+            fdsPeak = 0;
+            diskPeak = 0;
+        }
+
+        /**
+         * Return the bytes allocated on the heap since the start of the JVM.
+         */
+        long allocated() {
+            return collected.get() + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+
+        @Override
+        public synchronized void run() {
+            try {
+                heapPeak = Math.max(heapPeak, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+                threadsPeak = Math.max(threadsPeak, threads());
+                socketsPeak = Math.max(socketsPeak, sockets());
+                fdsPeak = Math.max(fdsPeak, fds());
+                diskPeak = Math.max(diskPeak, size(cacheDir));
+            }
+            catch (Exception ex) {
+                // the files could be removed while sampled, the next sample is taken.
+            }
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (! notification.getType().equals("com.sun.management.gc.notification")) return;
+
+            CompositeData info = (CompositeData) ((CompositeData) notification.getUserData()).get("gcInfo");
+            long released = 0;
+            released += used(info.get("memoryUsageBeforeGc"));
+            released -= used(info.get("memoryUsageAfterGc"));
+            collected.addAndGet(released);
+        }
+
+        /**
+         * Return the heap used on the memory usage per pool of the gc notification.
+         */
+        private long used(Object usages) {
+            long used = 0;
+            for (Object entry : ((javax.management.openmbean.TabularData) usages).values()) {
+                CompositeData row = (CompositeData) entry;
+                if (! heapPools.contains((String) row.get("key"))) continue;
+
+                used += MemoryUsage.from((CompositeData) row.get("value")).getUsed();
+            }
+            return used;
+        }
+
+        /**
+         * Return the live threads, except the ones of the fake server.
+         */
+        static int threads() {
+            int threads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (! thread.getName().startsWith("MockWebServer")) threads++;
+            }
+            return threads;
+        }
+
+        /**
+         * Return the sockets open to the fake server, read from /proc on Linux, or -1.
+         */
+        int sockets() throws IOException {
+            File fds = new File("/proc/self/fd");
+            String[] links = fds.list();
+            if (links == null) return -1;
+
+            Set<String> inodes = new HashSet<String>();
+            for (String link : links) {
+                try {
+                    String target = Files.readSymbolicLink(new File(fds, link).toPath()).toString();
+                    if (target.startsWith("socket:[")) inodes.add(target.substring(8, target.length() - 1));
+                }
+                catch (IOException ex) {
+                    // closed while listed.
+                }
+            }
+
+            int sockets = 0;
+            for (String table : new String[] { "/proc/self/net/tcp", "/proc/self/net/tcp6" }) {
+                File file = new File(table);
+                if (! file.exists()) continue;
+
+                List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+                for (String line : lines.subList(1, lines.size())) {
+                    // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode
+                    String[] columns = line.trim().split("\\s+");
+                    if (columns.length < 10) continue;
+
+                    String remote = columns[2];
+                    int port = Integer.parseInt(remote.substring(remote.indexOf(':') + 1), 16);
+                    if (port == serverPort && inodes.contains(columns[9])) sockets++;
+                }
+            }
+            return sockets;
+        }
+
+        /**
+         * Return the open file descriptors of the JVM (including the fake server), or -1.
+         */
+        static long fds() {
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.UnixOperatingSystemMXBean)
+                return ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount();
+            return -1;
+        }
+
+        /**
+         * Return the size of the files on the directory.
+         */
+        static long size(File file) {
+            if (file == null || ! file.exists()) return 0;
+            if (file.isFile()) return file.length();
+
+            long size = 0;
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) size += size(child);
+            }
+            return size;
+        }
+    }
+}
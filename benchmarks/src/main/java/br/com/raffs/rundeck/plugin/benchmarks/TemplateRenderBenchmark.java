@@ -0,0 +1,86 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import org.jtwig.JtwigModel;
+import org.jtwig.JtwigTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of a DeploymentConfig template with the vars file and the job options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// jtwig (parboiled) defines its parser classes by reflection on the class loader.
+@Fork(value = 1, jvmArgsAppend = {"-XX:+IgnoreUnrecognizedVMOptions", "--add-opens=java.base/java.lang=ALL-UNNAMED"})
+public class TemplateRenderBenchmark {
+
+    @Param({"10", "100"})
+    public int envVars;
+
+    private String source;
+    private Map<String, Object> vars;
+    private Map<String, Object> rundeckVars;
+    private JtwigTemplate template;
+
+    @Setup
+    public void setup() {
+        source = Fixtures.template();
+        vars = Fixtures.vars(envVars);
+        rundeckVars = Fixtures.rundeckVars();
+        template = JtwigTemplate.inlineTemplate(source);
+    }
+
+    /**
+     * Render with the compiled template, as given by the TemplateCache.
+     */
+    @Benchmark
+    public String render() {
+        return template.render(model());
+    }
+
+    /**
+     * Compile the template on every render, as on a template cache miss.
+     */
+    @Benchmark
+    public String compileAndRender() {
+        return JtwigTemplate.inlineTemplate(source).render(model());
+    }
+
+    private JtwigModel model() {
+        return JtwigModel.newModel()
+                .with("vars", vars)
+                .with("rundeck", rundeckVars);
+    }
+}
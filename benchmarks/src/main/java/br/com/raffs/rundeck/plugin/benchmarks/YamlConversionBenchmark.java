@@ -0,0 +1,87 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.benchmarks;
+
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.YamlConverter;
+import com.esotericsoftware.yamlbeans.YamlReader;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversion of the rendered manifest to the Deployment Configuration json.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class YamlConversionBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int containers;
+
+    private String manifest;
+
+    @Setup
+    public void setup() {
+        manifest = Fixtures.manifest(containers);
+    }
+
+    /**
+     * The typed conversion used by the step.
+     */
+    @Benchmark
+    public JSONObject yamlConverter() throws Exception {
+        return YamlConverter.toJSON(manifest);
+    }
+
+    /**
+     * The conversion before YamlConverter: every scalar read as a string, then
+     * the known fields fixed by replacing the serialized json (Utils.parserString).
+     */
+    @Benchmark
+    public JSONObject legacy() throws Exception {
+        Map deployment = (Map) new YamlReader(manifest).read();
+        return new JSONObject(parserString(new JSONObject(deployment).toString()));
+    }
+
+    /**
+     * Copy of the removed Utils.parserString.
+     */
+    private static String parserString(String str) {
+        return str
+             .replace("\"privileged\":\"false\"", "\"privileged\":false")
+             .replace("\"test\":\"false\"", "\"test\":false")
+             .replace("\"automatic\":\"true\"", "\"automatic\":true")
+             .replace("\"port\":\"8080\"", "\"port\": 8080");
+    }
+}
@@ -17,27 +17,46 @@
 
 package br.com.raffs.rundeck.plugin;
 
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.AdaptivePollScheduler;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.FixedPollScheduler;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.GitMirrorCache;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.HTTPClient;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.JsonDiff;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.ManifestCache;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.Metrics;
 import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.OpenshiftClient;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.OpenshiftCluster;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.PhaseTimer;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.PollScheduler;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.PreflightCache;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.ReadinessMode;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.RetryPolicy;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.RolloutHistory;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.RolloutResult;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.RolloutWatcher;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.TemplateCache;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.TraceLog;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.UpdateStrategy;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.Utils;
+import br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core.YamlConverter;
 import com.dtolabs.rundeck.core.execution.workflow.steps.StepException;
 import com.dtolabs.rundeck.core.execution.workflow.steps.StepFailureReason;
 import com.dtolabs.rundeck.core.plugins.Plugin;
 import com.dtolabs.rundeck.core.plugins.configuration.PropertyScope;
-import com.dtolabs.rundeck.core.utils.FileUtils;
 import com.dtolabs.rundeck.plugins.ServiceNameConstants;
 import com.dtolabs.rundeck.plugins.descriptions.PluginDescription;
 import com.dtolabs.rundeck.plugins.descriptions.PluginProperty;
 import com.dtolabs.rundeck.plugins.step.PluginStepContext;
 import com.dtolabs.rundeck.plugins.step.StepPlugin;
 import com.esotericsoftware.yamlbeans.YamlReader;
-import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.lib.ObjectId;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.jtwig.JtwigModel;
 import org.jtwig.JtwigTemplate;
 
-import java.io.File;
-import java.io.FileReader;
 import java.util.*;
+import java.util.concurrent.*;
 
 @Plugin(name = "openshift-deploy", service = ServiceNameConstants.WorkflowStep)
 @PluginDescription(
@@ -115,6 +134,48 @@ public class Deployment implements StepPlugin {
     )
     private String gitlab_deployment_file;  // GLOBAL
 
+    // define the local cache directory
+    @PluginProperty(
+            name = "cache-directory",
+            description = "Local directory where the plugin keeps the git repository mirrors between executions",
+            required = true,
+            defaultValue = "/var/tmp/ocdepl-cache",
+            scope = PropertyScope.Framework
+    )
+    private String cache_directory;         // GLOBAL
+
+    // define the max size of the git mirrors cache
+    @PluginProperty(
+            name = "git-cache-max-size",
+            description = "Max size (in megabytes) of the git mirrors cache, when exceeded \n" +
+                            "the least recently used mirrors are removed",
+            required = true,
+            defaultValue = "1024",
+            scope = PropertyScope.Framework
+    )
+    private int git_cache_max_size;         // GLOBAL
+
+    // define the max number of compiled templates kept in memory
+    @PluginProperty(
+            name = "template-cache-size",
+            description = "Max number of compiled deployment templates kept in memory between executions",
+            required = true,
+            defaultValue = "64",
+            scope = PropertyScope.Framework
+    )
+    private int template_cache_size;        // GLOBAL
+
+    // define the max number of rendered manifests kept in the cache
+    @PluginProperty(
+            name = "manifest-cache-size",
+            description = "Max number of rendered deployment manifests kept in the cache directory, \n" +
+                            "an identical deploy (same template, vars and options) skips the render",
+            required = true,
+            defaultValue = "256",
+            scope = PropertyScope.Framework
+    )
+    private int manifest_cache_size;        // GLOBAL
+
     // define the network timeout paramters
     @PluginProperty(
             name = "network-timeout",
@@ -125,14 +186,22 @@ public class Deployment implements StepPlugin {
     )
     private int network_timeout;             // GLOBAL
 
-    // define the network max count attempts on watching the deployment
+    // define the max time waiting the deployment to finish.
+    @PluginProperty(
+            name = "deployment-timeout",
+            description = "Max time (in seconds) that Rundeck will wait to finished the Deployment on Openshift " +
+                            "(600 when not set)",
+            required = false,
+            scope = PropertyScope.Framework
+    )
+    private int deployment_timeout;             // GLOBAL
+
+    // deprecated, replaced by deployment-timeout.
     @PluginProperty(
             name = "network-max-count-attempts",
-            description = "Max attempts (in seconds) on validating the Openshift Deployment " +
-                            "This values combining with network_attempts_time_interval will define " +
-                            "the time that Rundeck will wait to finished the Deployment on Openshift",
-            required = true,
-            defaultValue = "120",
+            description = "Deprecated, use deployment-timeout. When deployment-timeout is not set, Rundeck " +
+                            "waits this number of times the network-attempts-interval to finish the Deployment",
+            required = false,
             scope = PropertyScope.Framework
     )
     private int network_max_count_attemps;   // GLOBAL
@@ -140,13 +209,216 @@ public class Deployment implements StepPlugin {
     // define the netwowrk attempts time inverval.
     @PluginProperty(
             name = "network-attempts-interval",
-            description = "Define the time interval between the status attempts (in seconds)",
+            description = "Define the time interval between the status attempts (in seconds). \n" +
+                            "With the adaptive poll strategy it's the max interval between the attempts",
             required = true,
             defaultValue = "5",
             scope = PropertyScope.Framework
     )
     private int network_attempts_time_interval;  // GLOBAL
 
+    // define how the deployment status is polled.
+    @PluginProperty(
+            name = "poll-strategy",
+            description = "How to poll the deployment status when watches are not used: \n" +
+                            "'fixed' checks every network-attempts-interval, \n" +
+                            "'adaptive' waits based on the previous rollouts of the service, then checks " +
+                            "often and backs off until network-attempts-interval",
+            defaultValue = "adaptive",
+            scope = PropertyScope.Framework
+    )
+    private String poll_strategy;               // GLOBAL
+
+    // define the max idle connections kept open to the Openshift server.
+    @PluginProperty(
+            name = "network-pool-max-idle",
+            description = "Max number of idle connections to the Openshift server kept open between the steps",
+            required = true,
+            defaultValue = "5",
+            scope = PropertyScope.Framework
+    )
+    private int network_pool_max_idle;          // GLOBAL
+
+    // define the time an idle connection is kept open.
+    @PluginProperty(
+            name = "network-pool-keep-alive",
+            description = "Time (in seconds) an idle connection to the Openshift server is kept open",
+            required = true,
+            defaultValue = "300",
+            scope = PropertyScope.Framework
+    )
+    private int network_pool_keep_alive;        // GLOBAL
+
+    // define whether to compress the request bodies.
+    @PluginProperty(
+            name = "network-gzip-requests",
+            description = "Compress the request bodies sent to the Openshift server with gzip (bodies of 1 KB or " +
+                            "more). \n" +
+                            "Servers which can't read compressed bodies receive them as is",
+            defaultValue = "false",
+            scope = PropertyScope.Framework
+    )
+    private boolean network_gzip_requests;      // GLOBAL
+
+    // define where the metrics are exported for the Prometheus node exporter.
+    @PluginProperty(
+            name = "metrics-textfile",
+            description = "Path of the Prometheus textfile (ex: /var/lib/node_exporter/openshift-deploy.prom) " +
+                            "rewritten with the metrics after each execution, \n" +
+                            "the same metrics are available on JMX (br.com.raffs.rundeck.plugin:type=OpenshiftDeployment). " +
+                            "Empty to not write the file",
+            scope = PropertyScope.Framework
+    )
+    private String metrics_textfile;            // GLOBAL
+
+    // define where the network trace of the requests is written.
+    @PluginProperty(
+            name = "network-trace-file",
+            description = "Path of a JSON-lines file (ex: /var/log/rundeck/openshift-trace.jsonl) receiving one " +
+                            "line for each request to the Openshift server, \n" +
+                            "with the time spent on dns, connect, tls, first byte and transfer. " +
+                            "Empty to not trace the requests",
+            scope = PropertyScope.Framework
+    )
+    private String network_trace_file;          // GLOBAL
+
+    // define the size of the network trace before it's rotated.
+    @PluginProperty(
+            name = "network-trace-max-size",
+            description = "Size (in MB) of the network trace file before it's rotated, 3 rotated files are kept",
+            defaultValue = "10",
+            scope = PropertyScope.Framework
+    )
+    private int network_trace_max_size;         // GLOBAL
+
+    // define how many times a request failed by a transient error is sent.
+    @PluginProperty(
+            name = "network-retry-attempts",
+            description = "Number of attempts of the Openshift requests failed by transient errors (connection " +
+                            "failures, 429, 503, and 5xx on reads), \n" +
+                            "with exponential backoff honoring Retry-After. Also used for the update conflicts (409) " +
+                            "and the watch reconnections",
+            defaultValue = "3",
+            scope = PropertyScope.Framework
+    )
+    private int network_retry_attempts;         // GLOBAL
+
+    // define when the requests to a failing server are refused.
+    @PluginProperty(
+            name = "circuit-breaker-threshold",
+            description = "Number of consecutive failed requests to an Openshift server after which every job " +
+                            "stops sending requests to it for the cooldown, 0 to disable",
+            defaultValue = "5",
+            scope = PropertyScope.Framework
+    )
+    private int circuit_breaker_threshold;      // GLOBAL
+
+    // define for how long the requests to a failing server are refused.
+    @PluginProperty(
+            name = "circuit-breaker-cooldown",
+            description = "Time (in seconds) the requests to an Openshift server are refused once the circuit " +
+                            "breaker opens",
+            defaultValue = "30",
+            scope = PropertyScope.Framework
+    )
+    private int circuit_breaker_cooldown;       // GLOBAL
+
+    // define whether to open the connection before it's needed.
+    @PluginProperty(
+            name = "network-prewarm",
+            description = "Open the connection to the Openshift server in background when the step starts, \n" +
+                            "so the TCP/TLS handshake is done while the repository is updated",
+            defaultValue = "true",
+            scope = PropertyScope.Framework
+    )
+    private boolean network_prewarm;            // GLOBAL
+
+    // define whether to watch the rollout instead of polling
+    @PluginProperty(
+            name = "watch-mode",
+            description = "Watch the deployment pods and configuration changes through the Openshift watch API, \n" +
+                            "finishing the step as soon as the rollout completes. \n" +
+                            "Falls back to polling when the server does not allow watches",
+            defaultValue = "true",
+            scope = PropertyScope.Framework
+    )
+    private boolean watch_mode;                 // GLOBAL
+
+    // define whether to skip the services without changes.
+    @PluginProperty(
+            name = "skip-unchanged",
+            description = "Compare the rendered manifest with the running Deployment Configuration, ignoring the " +
+                            "fields managed by the server, \n" +
+                            "and finish without a new deployment when nothing has changed",
+            defaultValue = "true",
+            scope = PropertyScope.Framework
+    )
+    private boolean skip_unchanged;             // GLOBAL
+
+    // define how the deployment readiness is evaluated on polling.
+    @PluginProperty(
+            name = "readiness-mode",
+            description = "How the deployment completion is checked when polling: \n" +
+                            "'pods' counts the ready pods of the deployment (two requests per check), \n" +
+                            "'replication-controller' reads the phase and ready replicas of the deployment " +
+                            "Replication Controller, \n" +
+                            "'deployment-config' reads the replicas and conditions of the Deployment Configuration",
+            defaultValue = "pods",
+            scope = PropertyScope.Framework
+    )
+    private String readiness_mode;              // GLOBAL
+
+    // define how the Deployment Configuration is updated.
+    @PluginProperty(
+            name = "update-strategy",
+            description = "How the Deployment Configuration is sent to Openshift: \n" +
+                            "'strategic-merge-patch' sends only the changed fields, merging the containers, env, " +
+                            "volumes and ports by their key, \n" +
+                            "'merge-patch' sends only the changed fields, replacing the changed lists, \n" +
+                            "'put' replaces the whole Deployment Configuration. \n" +
+                            "The patches delete the fields removed from the manifest since the last update, " +
+                            "the manifest is kept on the raffs.com.br/last-applied-configuration annotation",
+            defaultValue = "strategic-merge-patch",
+            scope = PropertyScope.Framework
+    )
+    private String update_strategy;             // GLOBAL
+
+    // define how the new deployment is started.
+    @PluginProperty(
+            name = "trigger-mode",
+            description = "How the new deployment is started: \n" +
+                            "'instantiate' sends a DeploymentRequest to the instantiate endpoint after the update, " +
+                            "unless a ConfigChange trigger already started it, \n" +
+                            "'latest-version' increments the status.latestVersion on the update",
+            defaultValue = "instantiate",
+            scope = PropertyScope.Framework
+    )
+    private String trigger_mode;                // GLOBAL
+
+    // define for how long the server and project validations are reused.
+    @PluginProperty(
+            name = "preflight-cache-ttl",
+            description = "Time (in seconds) the Openshift server and project validations are reused \n" +
+                            "by the next executions, 0 validates them on every execution",
+            defaultValue = "60",
+            scope = PropertyScope.Framework
+    )
+    private int preflight_cache_ttl;            // GLOBAL
+
+    // define the list of clusters where the services are deployed.
+    @PluginProperty(
+            name = "openshift-clusters",
+            description = "Optional json list of Openshift clusters, the manifest is rendered once and deployed \n" +
+                            "on all of them, ex: [{\"name\": \"canary\", \"url\": \"https://c1:8443\", \"wave\": 1}, \n" +
+                            "{\"name\": \"eu\", \"url\": \"https://c2:8443\", \"token\": \"...\", \"deployment-timeout\": 900, " +
+                            "\"wave\": 2}]. \n" +
+                            "The clusters of a wave are deployed at the same time, after all the clusters of the " +
+                            "previous wave succeeded. Fields not given (url, apiversion, token, username/password, " +
+                            "timeout, deployment-timeout) are taken from the openshift-* properties",
+            scope = PropertyScope.Framework
+    )
+    private String openshift_clusters;          // GLOBAL
+
     // define the openshift server url
     @PluginProperty(
             name = "openshift-server-url",
@@ -204,11 +476,31 @@ public class Deployment implements StepPlugin {
     // define the Openshift service name
     @PluginProperty(
             name = "Openshift Service Name",
-            description = "service name, define the services that will be deploed",
+            description = "service name, define the services that will be deploed. \n" +
+                        "A comma-separated list deploys each service from its own sub-directory of Directory, " +
+                        "with a Directory glob (ex: services/*) '*' deploys every matched directory",
             required = true
     )
     private String openshift_service;       // LOCAL
 
+    // define how many services are deployed at the same time.
+    @PluginProperty(
+            name = "Batch Concurrency",
+            description = "Max number of services rendered and deployed at the same time, when the " +
+                        "service name is a comma-separated list or the directory is a glob",
+            defaultValue = "4"
+    )
+    private int batch_concurrency;
+
+    // define what happens with the other services when one fails.
+    @PluginProperty(
+            name = "Batch Failure Policy",
+            description = "'fail-fast' cancels the services not finished yet on the first failure, " +
+                        "'continue-on-error' deploys all of them and reports the failures at the end",
+            defaultValue = "fail-fast"
+    )
+    private String batch_failure_policy;
+
     // define the gitlab password for authentication
     @PluginProperty(
             name = "Environment",
@@ -222,11 +514,15 @@ public class Deployment implements StepPlugin {
     // define the gitlab password for authentication
     @PluginProperty(
             name = "Directory",
-            description = "Define the Directory where the deployment and variables files are located",
+            description = "Define the Directory where the deployment and variables files are located, " +
+                        "or a glob (ex: services/*) matching one directory for each service",
             required = true
     )
     private String gitlab_deployment_directory;
 
+    // time spent on each phase of the execution.
+    private PhaseTimer phases;
+
     /**
      * Execute a step on Node
      */
@@ -283,266 +579,877 @@ public class Deployment implements StepPlugin {
                     StepFailureReason.ConfigurationFailure
             );
 
-        // Define the temporary directory.
-        String temp_dir = String.format("/tmp/ocdepl-%s", Long.toString(System.nanoTime()));
-        String repo_dir = String.format("%s/%s", temp_dir, gitlab_deployment_directory);
+
+        // trigger_mode must be one of the known modes.
+        if (trigger_mode == null) trigger_mode = "instantiate";
+        if (! trigger_mode.equals("instantiate") && ! trigger_mode.equals("latest-version"))
+            throw new StepException(
+                    String.format("Configuration failed, unknown trigger-mode: %s", trigger_mode),
+                    StepFailureReason.ConfigurationFailure
+            );
+
+        // network-max-count-attempts is still honored while deployment-timeout is not set.
+        if (deployment_timeout <= 0) {
+            if (network_max_count_attemps > 0) {
+                deployment_timeout = network_max_count_attemps * network_attempts_time_interval;
+                System.out.println(String.format(
+                        "network-max-count-attempts is deprecated, please use deployment-timeout=%d instead",
+                        deployment_timeout)
+                );
+            }
+            else deployment_timeout = 600;
+        }
+
+        // Define the directory path inside the repository, relative to its root.
+        String repo_dir = gitlab_deployment_directory.replaceAll("^(\\./)+|/+$", "");
+        if (repo_dir.equals(".")) repo_dir = "";
+        if (("/" + repo_dir + "/").contains("/../") || repo_dir.startsWith("/"))
+            throw new StepException(
+                    String.format("Configuration failed, the deployment directory must be inside the repository: %s",
+                            gitlab_deployment_directory),
+                    StepFailureReason.ConfigurationFailure
+            );
+
+        // Define the clusters where the services are deployed.
+        List<OpenshiftCluster> clusters;
+        try {
+            clusters = clusters();
+        }
+        catch (Exception ex) {
+            throw new StepException(
+                    "Configuration failed, " + ex.getMessage(),
+                    StepFailureReason.ConfigurationFailure
+            );
+        }
+
+        // Warm up the connection to the Openshift servers.
+        if (network_prewarm) {
+            for (OpenshiftCluster cluster : clusters) {
+                new HTTPClient()
+                        .withBaseUrl(cluster.getServerUrl())
+                        .withTimeout(cluster.getTimeout())
+                        .withConnectionPool(network_pool_max_idle, network_pool_keep_alive)
+                        .build()
+                        .prewarm();
+            }
+        }
+
+        phases = new PhaseTimer();
+        Map<OpenshiftCluster, OpenshiftClient> clients = new LinkedHashMap<OpenshiftCluster, OpenshiftClient>();
+
 
         // Trying to Download the Deployment definition
         try {
 
-            // Download the files from the Gitlab, when it's the Service Definition.
-            System.out.println("Downloading repository: " + gitlab_repo + " ...");
-            Git.cloneRepository()
-                    .setURI(gitlab_repo)
-                    .setDirectory(new File(temp_dir))
-                    .setBranch(gitlab_branch)
-                    .setCredentialsProvider(
-                         new UsernamePasswordCredentialsProvider(gitlab_username, gitlab_password)
-                    ).call();
-
-            // Looking for the file on the plugins.
-            String varsPath = null;
-            for (String format : EXTENSION_SUPORTED) {
-                String path = String.format(
-                     "%s/%s/%s.%s",
-                     repo_dir, gitlab_variables_dir, gitlab_deployment_environment, format
-                );
+            // Update the local mirror of the repository, the files are read
+            // straight from the fetched commit without any checkout.
+            System.out.println("Updating repository mirror: " + gitlab_repo + " ...");
+            GitMirrorCache mirrors = new GitMirrorCache()
+                    .withCacheDir(String.format("%s/git", cache_directory))
+                    .withMaxSize(git_cache_max_size)
+                    .withCredentials(gitlab_username, gitlab_password)
+                    .withTimeout(network_timeout)
+                    .build();
 
-                if (new File(path).exists()) {
-                    varsPath = path;
-                    break;
-                }
+            // Read the files of every service from the same fetched commit.
+            List<ServiceTarget> targets;
+            long gitSyncAt = phases.start();
+            try (GitMirrorCache.Mirror mirror = mirrors.open(gitlab_repo, gitlab_branch)) {
+                phases.stop("git_sync", gitSyncAt);
+
+                long lookupAt = phases.start();
+                targets = findTargets(mirror, repo_dir);
+                for (ServiceTarget target : targets) readTarget(mirror, target);
+                phases.stop("vars_lookup", lookupAt);
             }
 
-            // Looking for the deploymet variable
-            String deploymentPath = null;
-            for (String format : EXTENSION_SUPORTED) {
-                String path = String.format("%s/%s.%s", repo_dir, gitlab_deployment_file, format);
+            final boolean batch = targets.size() > 1;
+            if (batch) {
+                StringBuilder names = new StringBuilder();
+                for (ServiceTarget target : targets) names.append(names.length() > 0 ? ", " : "").append(target.service);
+                System.out.println(String.format("Batch deployment of %d services: %s", targets.size(), names));
+            }
 
-                if (new File(path).exists()) {
-                    deploymentPath = path;
-                    break;
-                }
+            // Read the rundeck job parameters from the JOB Context
+            HashMap<String, Map<String, String>> jobContext =
+                    (HashMap<String, Map<String, String>>) context.getDataContext();
+            final Map<String, String> options = jobContext.get("option");
+
+            // Group the clusters by wave, the waves are deployed one after the other.
+            TreeMap<Integer, List<OpenshiftCluster>> waves = new TreeMap<Integer, List<OpenshiftCluster>>();
+            int clustersPerWave = 1;
+            for (OpenshiftCluster cluster : clusters) {
+                if (! waves.containsKey(cluster.getWave())) waves.put(cluster.getWave(), new ArrayList<OpenshiftCluster>());
+                waves.get(cluster.getWave()).add(cluster);
+                clustersPerWave = Math.max(clustersPerWave, waves.get(cluster.getWave()).size());
             }
 
-            // Proper way to handle errors
-            if (deploymentPath == null) {
-                String files = "";
-                for (String format : EXTENSION_SUPORTED) {
-                    files = files +
-                            String.format("%s/%s.%s,", repo_dir, gitlab_deployment_file   , format);
+            int concurrency = Math.max(1, Math.min(batch_concurrency, targets.size()));
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency * clustersPerWave);
+            try {
+
+                // Render the manifests of all the services at the same time, once for all the clusters.
+                List<Future<JSONObject>> renders = new ArrayList<Future<JSONObject>>();
+                for (final ServiceTarget target : targets) {
+                    renders.add(executor.submit(new Callable<JSONObject>() {
+                        @Override
+                        public JSONObject call() throws Exception {
+                            return render(target, options, batch);
+                        }
+                    }));
+                }
+                for (int i = 0; i < targets.size(); i++) {
+                    targets.get(i).deployConfig = Utils.await(renders.get(i));
+                }
+
+                // Define the Openshift clients, authenticated once per cluster and shared by the services.
+                // The server and project validations are skipped when they passed recently,
+                // and sent to all the clusters at the same time otherwise.
+                long preflightAt = phases.start();
+                TraceLog trace = traceLog();
+                PreflightCache preflight = new PreflightCache().withTtl(preflight_cache_ttl);
+                Map<OpenshiftCluster, CompletableFuture<Integer>> serverStatusChecks =
+                        new HashMap<OpenshiftCluster, CompletableFuture<Integer>>();
+                Map<OpenshiftCluster, CompletableFuture<Boolean>> projectChecks =
+                        new HashMap<OpenshiftCluster, CompletableFuture<Boolean>>();
+
+                for (OpenshiftCluster cluster : clusters) {
+                    OpenshiftClient oc = cluster.newClient(openshift_project, targets.get(0).service)
+                            .withConnectionPool(network_pool_max_idle, network_pool_keep_alive)
+                            .withReadinessMode(ReadinessMode.fromString(readiness_mode))
+                            .withUpdateStrategy(UpdateStrategy.fromString(update_strategy))
+                            .withRetryPolicy(new RetryPolicy().withMaxAttempts(network_retry_attempts))
+                            .withGzipRequests(network_gzip_requests)
+                            .withTraceLog(trace)
+                            .withCircuitBreaker(circuit_breaker_threshold, circuit_breaker_cooldown)
+                            .build();
+                    clients.put(cluster, oc);
+
+                    if (! preflight.isValid(cluster.getServerUrl(), openshift_project)) {
+                        serverStatusChecks.put(cluster, oc.getServerStatusAsync());
+                        projectChecks.put(cluster, oc.checkProjectAsync(openshift_project));
+                    }
+                }
+
+                for (OpenshiftCluster cluster : clusters) {
+                    // connect to the Openshift client
+                    System.out.print(String.format("Connecting to Openshift server: %s ...", cluster.getServerUrl()));
+
+                    if (serverStatusChecks.containsKey(cluster)) {
+                        // Validate the service status
+                        int serverStatus;
+                        if ((serverStatus = Utils.await(serverStatusChecks.get(cluster))) != 200) {
+                            throw new Exception(
+                                 String.format(
+                                         "[%d] Receive when trying to return server status of %s",
+                                         serverStatus, cluster.getServerUrl()
+                                 )
+                            );
+                        }
+                        else System.out.println("[OK]");
+
+                        // Validate whether the project exists.
+                        if (! Utils.await(projectChecks.get(cluster))) {
+                            throw new Exception(
+                                String.format(
+                                   "Appears that project does not exists, or access ir forbidden, %s",
+                                   openshift_project
+                                )
+                            );
+                        }
+
+                        preflight.put(cluster.getServerUrl(), openshift_project);
+                    }
+                    else System.out.println("[OK] (validated recently)");
+                }
+                phases.stop("preflight", preflightAt);
+
+                // Trigger and watch the rollouts wave by wave, at most batch-concurrency
+                // services at the same time on each cluster.
+                final boolean prefixed = batch || clusters.size() > 1;
+                List<RolloutResult> results = new ArrayList<RolloutResult>();
+                boolean stopped = false;
+                for (Map.Entry<Integer, List<OpenshiftCluster>> wave : waves.entrySet()) {
+                    List<Rollout> rollouts = new ArrayList<Rollout>();
+                    for (OpenshiftCluster cluster : wave.getValue()) {
+                        for (int i = 0; i < targets.size(); i++) {
+                            ServiceTarget target = targets.get(i);
+                            String label = clusters.size() == 1 ? target.service
+                                    : batch ? cluster.getName() + "/" + target.service
+                                    : cluster.getName();
+
+                            Rollout rollout = new Rollout(cluster, target, label);
+                            rollout.client = clients.get(cluster).forService(target.service);
+
+                            // the services deployed first have their configuration requested right away.
+                            if (! stopped && i < concurrency) rollout.currentDeploy = rollout.client.getDeploymentConfigAsync();
+                            rollouts.add(rollout);
+                        }
+                    }
+
+                    if (stopped) {
+                        for (Rollout rollout : rollouts) {
+                            results.add(new RolloutResult(rollout.label, RolloutResult.Status.CANCELLED, 0, 0,
+                                    "not started, a previous wave has failed"));
+                        }
+                        continue;
+                    }
+
+                    if (waves.size() > 1) System.out.println(String.format("Deploying wave %d ...", wave.getKey()));
+                    for (RolloutResult result : rollout(executor, rollouts, prefixed)) {
+                        results.add(result);
+                        if (result.getStatus() != RolloutResult.Status.SUCCEEDED) stopped = true;
+                    }
+                }
+
+                int failed = 0;
+                StringBuilder failures = new StringBuilder();
+                for (RolloutResult result : results) {
+                    Metrics.registry().increment(Metrics.ROLLOUTS, Metrics.labels("status", rolloutStatus(result)));
+                    if (result.getStatus() == RolloutResult.Status.SUCCEEDED) continue;
+
+                    failed += 1;
+                    failures.append(String.format("\n  %s: %s", result.getService(),
+                            result.getMessage() == null ? result.getStatus() : result.getMessage()));
+                }
+
+                if (prefixed) {
+                    System.out.println("\n+========== Batch Deployment Summary ==========+");
+                    for (RolloutResult result : results) System.out.println(result);
+                }
+
+                // Bytes transferred with each cluster, before and after the compression.
+                for (Map.Entry<OpenshiftCluster, OpenshiftClient> entry : clients.entrySet()) {
+                    System.out.println(String.format("Openshift transfer%s: %s",
+                            clusters.size() > 1 ? " on " + entry.getKey().getName() : "",
+                            entry.getValue().getTransferStats().describe()));
                 }
 
-                throw new StepException(
-                        String.format(
-                                "Not able to found any of the file list: %s on %s",
-                                files, gitlab_repo
-                        ),
-                        StepFailureReason.ConfigurationFailure
+                if (failed > 0) {
+                    if (! prefixed) throw new Exception(results.get(0).getMessage());
+
+                    throw new Exception(
+                            String.format("%d of %d services were not deployed:%s",
+                                    failed, results.size(), failures)
+                    );
+                }
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+        catch (Exception ex) {
+            // validate the servers and project again on the next execution.
+            for (OpenshiftCluster cluster : clusters) {
+                PreflightCache.invalidate(cluster.getServerUrl(), openshift_project);
+            }
+
+            throw new StepException(
+                    "Error on trying automate Openshift Deployment & Provision\nError msg: " + ex.getMessage(),
+                    StepFailureReason.PluginFailed
+            );
+        }
+        finally {
+            report(clients);
+        }
+    }
+
+    /**
+     * Report the wall-clock time of each phase and the Openshift requests as step output data
+     * (RUNDECK:DATA lines, captured by the Key Value Data log filter), and write
+     * the metrics textfile when configured.
+     *
+     * @param clients the client of each cluster
+     */
+    private void report(Map<OpenshiftCluster, OpenshiftClient> clients) {
+        for (Map.Entry<String, Long> phase : phases.getPhases().entrySet()) {
+            System.out.println(String.format("RUNDECK:DATA:ocdepl_phase_%s_ms=%d", phase.getKey(), phase.getValue()));
+        }
+
+        // the metrics must not fail the deployment.
+        try {
+            long calls = 0, sent = 0, received = 0;
+            for (OpenshiftClient oc : clients.values()) {
+                calls += oc.getTransferStats().getCalls();
+                sent += oc.getTransferStats().getSentWireBytes();
+                received += oc.getTransferStats().getReceivedWireBytes();
+            }
+            System.out.println(String.format("RUNDECK:DATA:ocdepl_http_calls=%d", calls));
+            System.out.println(String.format("RUNDECK:DATA:ocdepl_http_sent_bytes=%d", sent));
+            System.out.println(String.format("RUNDECK:DATA:ocdepl_http_received_bytes=%d", received));
+
+            if (metrics_textfile != null && ! metrics_textfile.trim().isEmpty()) {
+                Metrics.registry().writeTextfile(metrics_textfile.trim());
+            }
+
+            TraceLog trace = traceLog();
+            if (trace != null) trace.flush();
+        }
+        catch (Exception ex) {
+            System.out.println("Could not report the metrics: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Return the network trace log, or null when the requests are not traced.
+     */
+    private TraceLog traceLog() {
+        if (network_trace_file == null || network_trace_file.trim().isEmpty()) return null;
+
+        return TraceLog.forFile(network_trace_file.trim())
+                .withMaxSize(network_trace_max_size * 1024L * 1024L);
+    }
+
+    /**
+     * Return the status label of the rollout on the metrics.
+     */
+    private static String rolloutStatus(RolloutResult result) {
+        if (result.getStatus() == RolloutResult.Status.SUCCEEDED && "no changes".equals(result.getMessage()))
+            return "unchanged";
+
+        return result.getStatus().name().toLowerCase();
+    }
+
+    /**
+     * Return the clusters to deploy: the openshift-clusters list, or the
+     * openshift-server-url cluster when there's no list.
+     */
+    private List<OpenshiftCluster> clusters() throws Exception {
+        OpenshiftCluster defaults = new OpenshiftCluster()
+                .withName(openshift_server)
+                .withServerUrl(openshift_server)
+                .withApiVersion(openshift_apiversion)
+                .withToken(openshift_token)
+                .withUsername(openshift_username)
+                .withPassword(openshift_password)
+                .withTimeout(network_timeout)
+                .withDeploymentTimeout(deployment_timeout);
+
+        if (openshift_clusters == null || openshift_clusters.trim().isEmpty()) {
+            return Collections.singletonList(defaults);
+        }
+
+        return OpenshiftCluster.parse(openshift_clusters, defaults);
+    }
+
+    /**
+     * Define the services to deploy and their directories: the directories matching the
+     * Directory glob, one sub-directory for each service of a list, or the Directory itself.
+     *
+     * @param mirror opened repository mirror
+     * @param repo_dir the Directory without leading and trailing slashes
+     * @return the services to deploy
+     */
+    private List<ServiceTarget> findTargets(GitMirrorCache.Mirror mirror, String repo_dir) throws Exception {
+        List<String> services = new ArrayList<String>();
+        for (String name : openshift_service.split(",")) {
+            if (! name.trim().isEmpty()) services.add(name.trim());
+        }
+
+        if (services.isEmpty())
+            throw new Exception("Could not find any service name to deploy");
+
+        List<ServiceTarget> targets = new ArrayList<ServiceTarget>();
+        if (repo_dir.matches(".*[*?].*")) {
+            // each matched directory holding a deployment file is a service, named after the directory.
+            for (String directory : mirror.findDirectories(repo_dir)) {
+                String name = directory.substring(directory.lastIndexOf('/') + 1);
+                if (! services.contains("*") && ! services.contains(name)) continue;
+
+                if (findDeployment(mirror, directory) != null) targets.add(new ServiceTarget(name, directory));
+            }
+
+            if (targets.isEmpty())
+                throw new Exception(
+                        String.format("Could not find any deployment directory matching %s on %s",
+                                repo_dir, gitlab_repo)
                 );
+        }
+        else if (services.size() > 1) {
+            for (String service : services) {
+                targets.add(new ServiceTarget(service, repo_dir.isEmpty() ? service : repo_dir + "/" + service));
             }
+        }
+        else targets.add(new ServiceTarget(services.get(0), repo_dir));
+
+        return targets;
+    }
 
-            // Instance the rundeck vars object mapping
-            // allocating the plugin parameters to usage.
-            JSONObject rundeckVars = new JSONObject() {{
-                put("plugin", new JSONObject() {{
-                    put("gitlab_repo", gitlab_repo);
-                    put("gitlab_branch", gitlab_branch);
-                    put("gitlab_username", gitlab_username);
-                    put("gitlab_deployment_file", gitlab_deployment_file);
-                    put("gitlab_variable_file", gitlab_deployment_environment);
-
-                    put("openshift_server", openshift_server);
-                    put("openshift_apiversion", openshift_apiversion);
-                    put("openshift_project", openshift_project);
-                    put("openshift_service", openshift_service);
-                    put("openshift_username", openshift_username);
-                }});
-            }};
+    /**
+     * Look for the deployment file on the directory.
+     *
+     * @return the blob id of the deployment file, or null
+     */
+    private ObjectId findDeployment(GitMirrorCache.Mirror mirror, String directory) throws Exception {
+        ObjectId deploymentBlob = null;
+        for (String format : EXTENSION_SUPORTED) {
+            String path = String.format("%s/%s.%s", directory, gitlab_deployment_file, format);
 
-            // Read the rundeck job parameters from the JOB Context
-            HashMap<String, Map<String, String>> jobContext =
-                    (HashMap<String, Map<String, String>>) context.getDataContext();
+            if ((deploymentBlob = mirror.findFile(path)) != null) break;
+        }
+
+        return deploymentBlob;
+    }
+
+    /**
+     * Read the deployment template and vars file of the service.
+     */
+    private void readTarget(GitMirrorCache.Mirror mirror, ServiceTarget target) throws Exception {
+
+        // Looking for the file on the plugins.
+        ObjectId varsBlob = null;
+        for (String format : EXTENSION_SUPORTED) {
+            String path = String.format(
+                 "%s/%s/%s.%s",
+                 target.directory, gitlab_variables_dir, gitlab_deployment_environment, format
+            );
+
+            if ((varsBlob = mirror.findFile(path)) != null) break;
+        }
+
+        // Looking for the deploymet variable
+        ObjectId deploymentBlob = findDeployment(mirror, target.directory);
 
-            if (jobContext.get("option") != null) {
-                rundeckVars.put("option", jobContext.get("option"));
+        // Proper way to handle errors
+        if (deploymentBlob == null) {
+            String files = "";
+            for (String format : EXTENSION_SUPORTED) {
+                files = files +
+                        String.format("%s/%s.%s,", target.directory, gitlab_deployment_file, format);
             }
 
+            throw new StepException(
+                    String.format(
+                            "Not able to found any of the file list: %s on %s",
+                            files, gitlab_repo
+                    ),
+                    StepFailureReason.ConfigurationFailure
+            );
+        }
+
+        if (varsBlob != null) {
+            target.varsFile = mirror.readFile(varsBlob);
+            target.varsId = varsBlob.name();
+        }
+        target.template = mirror.readFile(deploymentBlob);
+        target.templateId = deploymentBlob.name();
+    }
+
+    /**
+     * Render the Deployment Configuration of the service, reusing
+     * the manifest already rendered from the same inputs.
+     *
+     * @param target the service
+     * @param options rundeck job options
+     * @param batch whether the log lines are prefixed with the service
+     * @return the Deployment Configuration
+     */
+    private JSONObject render(ServiceTarget target, Map<String, String> options, boolean batch) throws Exception {
+        final String service = target.service;
+
+        // Instance the rundeck vars object mapping
+        // allocating the plugin parameters to usage.
+        JSONObject rundeckVars = new JSONObject() {{
+            put("plugin", new JSONObject() {{
+                put("gitlab_repo", gitlab_repo);
+                put("gitlab_branch", gitlab_branch);
+                put("gitlab_username", gitlab_username);
+                put("gitlab_deployment_file", gitlab_deployment_file);
+                put("gitlab_variable_file", gitlab_deployment_environment);
+
+                put("openshift_server", openshift_server);
+                put("openshift_apiversion", openshift_apiversion);
+                put("openshift_project", openshift_project);
+                put("openshift_service", service);
+                put("openshift_username", openshift_username);
+            }});
+        }};
+
+        if (options != null) {
+            rundeckVars.put("option", options);
+        }
+
+        // Look for a manifest already rendered from the same template, vars and options.
+        ManifestCache manifests = new ManifestCache()
+                .withCacheDir(String.format("%s/manifests", cache_directory))
+                .withMaxEntries(manifest_cache_size)
+                .build();
+
+        String manifestKey = ManifestCache.key(target.templateId, target.varsId, rundeckVars);
+        JSONObject deployConfig = manifests.get(manifestKey);
+        if (deployConfig == null) {
+
             // Read the environment variables into map of variables.
+            long renderAt = phases.start();
             Object vars = null;
-            if (varsPath != null) {
-                YamlReader varsReader = new YamlReader(new FileReader(varsPath));
+            if (target.varsFile != null) {
+                YamlReader varsReader = new YamlReader(target.varsFile);
                 vars = varsReader.read();
             }
 
-            //  Read the Deployment file using template-engine to validate the blocks and dynamic content
-            JtwigTemplate template = JtwigTemplate.fileTemplate(new File(deploymentPath));
+            //  Read the Deployment file using template-engine to validate the blocks and dynamic content,
+            //  the compiled template is shared between executions by the git blob id.
+            TemplateCache templates = TemplateCache.getInstance().withMaxEntries(template_cache_size);
+            JtwigTemplate template = templates.get(target.templateId, target.template);
+            log(service, batch, String.format("Template cache: %d hits, %d misses",
+                    templates.getHits(), templates.getMisses()));
+
             JtwigModel model = JtwigModel.newModel()
                     .with("vars", vars)
                     .with("rundeck", rundeckVars);
             String deploymentFile = template.render(model);
+            phases.stop("template_render", renderAt);
 
-            // Return the Deployment Configuration from the YAML file.
-            Map deployment = (Map) new YamlReader(deploymentFile).read();
-            JSONObject deployConfig = new JSONObject(deployment);
+            // Return the Deployment Configuration from the YAML file, keeping the value types.
+            long parseAt = phases.start();
+            deployConfig = YamlConverter.toJSON(deploymentFile);
+            phases.stop("yaml_parse", parseAt);
 
-            // connect to the Openshift client
-            System.out.print(String.format("Connecting to Openshift server: %s ...", openshift_server));
+            manifests.put(manifestKey, deployConfig);
+        }
+        else log(service, batch, String.format("Manifest cache: reusing rendered manifest %s", manifestKey));
 
-            // Define the Openshift
-            OpenshiftClient oc = new OpenshiftClient()
-                    .withProject(openshift_project)
-                    .withService(openshift_service)
-                    .withServerUrl(openshift_server)
-                    .withApiVersion(openshift_apiversion)
-                    .withTimeout(network_timeout)
-                    .withToken(openshift_token)
-                    .withUsername(openshift_username)
-                    .withPassword(openshift_password)
+        return deployConfig;
+    }
 
-                    .build();
+    /**
+     * Deploy the services on the executor, aggregating the results in the services order.
+     * With the fail-fast policy the first failure cancels the services not finished yet.
+     *
+     * @param executor executor limited to batch-concurrency threads per cluster
+     * @param rollouts the services with the rendered manifest and the cluster client
+     * @param prefixed whether the log lines are prefixed with the service/cluster
+     * @return the result of each service
+     */
+    private List<RolloutResult> rollout(ExecutorService executor, List<Rollout> rollouts,
+                                        final boolean prefixed) throws Exception {
+        boolean failFast;
+        if (batch_failure_policy == null || batch_failure_policy.equals("fail-fast")) failFast = true;
+        else if (batch_failure_policy.equals("continue-on-error")) failFast = false;
+        else throw new Exception(String.format("Unknown batch failure policy: %s", batch_failure_policy));
+
+        CompletionService<RolloutResult> completion = new ExecutorCompletionService<RolloutResult>(executor);
+        Map<Future<RolloutResult>, Rollout> running = new LinkedHashMap<Future<RolloutResult>, Rollout>();
+        for (final Rollout rollout : rollouts) {
+            running.put(completion.submit(new Callable<RolloutResult>() {
+                @Override
+                public RolloutResult call() {
+                    return deployService(rollout, prefixed);
+                }
+            }), rollout);
+        }
 
-            // Validate the service status
-            int serverStatus;
-            if ((serverStatus = oc.getServerStatus()) != 200) {
-                throw new Exception(
-                     String.format(
-                             "[%d] Receive when trying to return server status", serverStatus
-                     )
-                );
+        Map<Rollout, RolloutResult> results = new HashMap<Rollout, RolloutResult>();
+        boolean aborted = false;
+        for (int i = 0; i < rollouts.size(); i++) {
+            Future<RolloutResult> done = completion.take();
+            Rollout rollout = running.remove(done);
+
+            RolloutResult result;
+            try {
+                result = done.get();
             }
-            else System.out.println("[OK]");
+            catch (CancellationException ex) {
+                result = new RolloutResult(rollout.label, RolloutResult.Status.CANCELLED, 0, 0,
+                        "cancelled after the failure of another service");
+            }
+            results.put(rollout, result);
 
-            // Validate whether the project exists.
-            if (! oc.checkProject(openshift_project)) {
-                throw new Exception(
-                    String.format(
-                       "Appears that project does not exists, or access ir forbidden, %s",
-                       openshift_project
-                    )
-                );
+            if (result.getStatus() == RolloutResult.Status.FAILED && failFast && ! aborted) {
+                aborted = true;
+                for (Future<RolloutResult> other : running.keySet()) other.cancel(true);
             }
+        }
 
-            // Create the project whether exists
+        List<RolloutResult> ordered = new ArrayList<RolloutResult>();
+        for (Rollout rollout : rollouts) ordered.add(results.get(rollout));
+
+        return ordered;
+    }
+
+    /**
+     * Update the Deployment Configuration of the service and wait
+     * the rollout to finish.
+     *
+     * @param rollout the service with the rendered manifest and the cluster client
+     * @param prefixed whether the log lines are prefixed with the service/cluster
+     * @return the result of the service, never throws
+     */
+    private RolloutResult deployService(Rollout rollout, boolean prefixed) {
+        long startedAt = System.currentTimeMillis();
+        int deployedVersion = 0;
+
+        try {
+            OpenshiftClient oc = rollout.client;
+
+            // each cluster updates its own copy of the rendered manifest.
+            JSONObject deployConfig = new JSONObject(rollout.target.deployConfig.toString());
+
+            // Update the Deployment Configuration, failing when the service does not exist.
             JSONObject newReleaseResponse;
-            if (! oc.checkService(openshift_service)) {
-                throw new StepException(
-                    String.format(
-                         "Unable to found the project: %s/%s !",
-                            openshift_project, openshift_service
-                    ), StepFailureReason.ConfigurationFailure
-                );
+            long updateAt = phases.start();
+            JSONObject  currentDeploy = rollout.currentDeploy != null
+                    ? Utils.await(rollout.currentDeploy)
+                    : oc.getDeploymentConfig();
+            if (currentDeploy != null) {
+                deployConfig.put("metadata", currentDeploy.getJSONObject("metadata"));
+
+                if (deployConfig.has("statusCode")) deployConfig.remove("statusCode");
+                if (deployConfig.getJSONObject("spec")
+                                .getJSONObject("template")
+                                .getJSONObject("metadata")
+                                .has("creationTimestamp")) {
+
+                        deployConfig.getJSONObject("spec")
+                                .getJSONObject("template")
+                                .getJSONObject("metadata")
+                                .remove("creationTimestamp");
+                }
 
-            } else {
+                int latestVersion = currentDeploy.getJSONObject("status").getInt("latestVersion");
 
-                // Update an already existed Deployment Configuration.
-                JSONObject  currentDeploy = oc.getDeploymentConfig();
-                if (currentDeploy != null) {
-                    deployConfig.put("metadata", currentDeploy.getJSONObject("metadata"));
+                // Compare the manifest with the running configuration, the status and
+                // the metadata (replaced by the live one above) are managed by the server.
+                JSONObject rendered = new JSONObject(deployConfig.toString());
+                rendered.remove("status");
+                rendered.remove("metadata");
 
-                    int latestVersion = currentDeploy.getJSONObject("status").getInt("latestVersion");
-                    deployConfig.getJSONObject("status").put("latestVersion", ++latestVersion);
+                JSONObject applied = JsonDiff.lastApplied(currentDeploy);
+                List<String> changes = JsonDiff.changes(currentDeploy, rendered, applied);
 
-                    if (deployConfig.has("statusCode")) deployConfig.remove("statusCode");
-                    if (deployConfig.getJSONObject("spec")
-                                    .getJSONObject("template")
-                                    .getJSONObject("metadata")
-                                    .has("creationTimestamp")) {
+                // the removed fields are found only from the last applied manifest, not recorded yet.
+                if (changes.isEmpty() && applied == null)
+                    changes.add("last applied configuration not recorded, updating the whole configuration");
+                if (changes.isEmpty()) {
+                    if (skip_unchanged) {
+                        log(rollout.label, prefixed, String.format(
+                                "No changes on the Deployment Configuration, deployment #%d is up to date",
+                                latestVersion));
 
-                            deployConfig.getJSONObject("spec")
-                                    .getJSONObject("template")
-                                    .getJSONObject("metadata")
-                                    .remove("creationTimestamp");
+                        return new RolloutResult(rollout.label, RolloutResult.Status.SUCCEEDED, latestVersion,
+                                System.currentTimeMillis() - startedAt, "no changes");
                     }
 
-                    newReleaseResponse = oc.setDeploymentConfig(deployConfig);
+                    log(rollout.label, prefixed, "No changes on the Deployment Configuration, deploying again");
                 }
                 else {
-                    throw new Exception(
-                        "Error on try to get the Deployment Configuration"
-                    );
+                    log(rollout.label, prefixed, String.format("Changes on the Deployment Configuration (%d):",
+                            changes.size()));
+                    for (String change : changes) log(rollout.label, prefixed, "  " + change);
                 }
 
+                if (trigger_mode.equals("latest-version")) {
+                    // trigger the deployment on the same request of the update.
+                    deployConfig.getJSONObject("status").put("latestVersion", latestVersion + 1);
+                    newReleaseResponse = oc.updateDeploymentConfig(currentDeploy, deployConfig);
+                }
+                else {
+                    // update the spec keeping the deployment version, then trigger the deployment apart.
+                    deployConfig.getJSONObject("status").put("latestVersion", latestVersion);
+                    newReleaseResponse = changes.isEmpty()
+                            ? currentDeploy
+                            : oc.updateDeploymentConfig(currentDeploy, deployConfig);
+
+                    // a ConfigChange trigger may have started the deployment already,
+                    // otherwise the server starts it when the template changed.
+                    newReleaseResponse = oc.triggerDeployment(newReleaseResponse, latestVersion, ! changes.isEmpty());
+                    JSONObject triggered = newReleaseResponse.optJSONObject("status");
+                    if (triggered != null && triggered.optInt("latestVersion", latestVersion) == latestVersion) {
+                        log(rollout.label, prefixed, String.format(
+                                "No template change on the server, deployment #%d is kept", latestVersion));
+                    }
+                }
+            }
+            else {
+                throw new Exception(
+                    "Error on try to get the Deployment Configuration"
+                );
+            }
+
+            phases.stop("update", updateAt);
+
+            deployedVersion = currentDeploy.getJSONObject("status").getInt("latestVersion") + 1;
+            if (newReleaseResponse.has("status")
+                    && newReleaseResponse.getJSONObject("status").has("latestVersion")) {
+                deployedVersion = newReleaseResponse.getJSONObject("status").getInt("latestVersion");
             }
 
             // Watch the deployment
-            if (newReleaseResponse.has("status")) {
-                if (newReleaseResponse.getJSONObject("status").has("latestVersion")) {
-                    System.out.println(String.format("Deployment #%d running, this could take some while...",
-                            newReleaseResponse.getJSONObject("status").getInt("latestVersion")));
+            log(rollout.label, prefixed, String.format("Deployment #%d running, this could take some while...",
+                    deployedVersion));
+
+            // Watching the Deployment of the Services, streaming the changes when the server allows.
+            long triggeredAt = System.currentTimeMillis();
+            long readyAt = phases.start();
+            long deadline = triggeredAt + rollout.cluster.getDeploymentTimeout() * 1000L;
+
+            boolean completed = false;
+            if (watch_mode) {
+                RolloutWatcher.Result result = new RolloutWatcher(oc)
+                        .withVersion(deployedVersion)
+                        .await(deadline - triggeredAt);
+
+                if (result == RolloutWatcher.Result.TIMEOUT) {
+                    throw new Exception("Openshift deployment took to long to finished. ");
                 }
+                else if (result == RolloutWatcher.Result.COMPLETED) completed = true;
+                else log(rollout.label, prefixed,
+                        "Watch is not allowed or keeps failing on the Openshift server, polling the deployment status");
             }
 
-            // Watching the Deployment of the Services.
+            // Polling the Deployment status otherwise.
+            RolloutHistory history = new RolloutHistory()
+                    .withCacheDir(String.format("%s/history", cache_directory))
+                    .build();
+            String historyKey = RolloutHistory.key(rollout.cluster.getServerUrl(), openshift_project, rollout.target.service);
+
+            PollScheduler scheduler = pollScheduler(history.fastest(historyKey), rollout.cluster.getDeploymentTimeout());
             int attempts = 0;
-            while (oc.notReady()) {
-                if (attempts >= network_max_count_attemps) {
-                    throw new StepException(
-                            "Openshift deployment took to long to finished. ",
-                            StepFailureReason.PluginFailed
-                    );
+            while (! completed) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new Exception("Openshift deployment took to long to finished. ");
                 }
-                else Thread.sleep(network_attempts_time_interval * 1000);
 
+                long delay = scheduler.nextDelay(attempts);
+                if (delay > 0) Thread.sleep(Math.min(delay, remaining));
+
+                completed = ! oc.notReady(deployedVersion);
                 attempts += 1;
             }
 
-            dumpStatus(oc.getDeploymentConfig());
+            history.record(historyKey, System.currentTimeMillis() - triggeredAt);
+            phases.stop("wait_ready", readyAt);
+
+            dumpStatus(rollout, oc.getDeploymentConfig());
+
+            return new RolloutResult(rollout.label, RolloutResult.Status.SUCCEEDED, deployedVersion,
+                    System.currentTimeMillis() - startedAt, null);
+        }
+        catch (InterruptedException ex) {
+            return new RolloutResult(rollout.label, RolloutResult.Status.CANCELLED, deployedVersion,
+                    System.currentTimeMillis() - startedAt, "cancelled after the failure of another service");
         }
         catch (Exception ex) {
-            throw new StepException(
-                    "Error on trying automate Openshift Deployment & Provision\nError msg: " + ex.getMessage(),
-                    StepFailureReason.PluginFailed
-            );
+            log(rollout.label, prefixed, "Deployment has failed: " + ex.getMessage());
+
+            return new RolloutResult(rollout.label, RolloutResult.Status.FAILED, deployedVersion,
+                    System.currentTimeMillis() - startedAt, ex.getMessage());
         }
-        finally {
+    }
 
-            // House cleaning when need.
-            try {
-                FileUtils.deleteDir(new File(repo_dir));
-            }
-            catch (Exception ex) { /* Do NOTHING */ }
+    /**
+     * Print the message, prefixed with the service on batch deployments.
+     */
+    private static void log(String label, boolean prefixed, String message) {
+        System.out.println(prefixed ? String.format("[%s] %s", label, message) : message);
+    }
+
+    /**
+     * Create the poll scheduler of the configured strategy.
+     *
+     * @param fastest shortest of the previous rollouts of the service (in milliseconds), or -1
+     * @param timeout max time (in seconds) waiting the rollout
+     * @return the poll scheduler
+     */
+    private PollScheduler pollScheduler(long fastest, int timeout) throws Exception {
+        long interval = network_attempts_time_interval * 1000L;
+
+        if (poll_strategy == null || poll_strategy.equals("adaptive")) {
+            // no check is done before the fastest previous rollout could have finished.
+            long initialDelay = fastest > 0 ? Math.min(fastest * 8 / 10, timeout * 500L) : 1000;
+
+            return new AdaptivePollScheduler()
+                    .withInitialDelay(initialDelay)
+                    .withMinDelay(Math.min(1000, interval))
+                    .withMaxDelay(interval);
         }
+        else if (poll_strategy.equals("fixed")) {
+            return new FixedPollScheduler(interval);
+        }
+
+        throw new Exception(String.format("Unknown poll strategy: %s", poll_strategy));
     }
 
     /**
      * Dump information about the deployment
      *
+     * @param rollout
      * @param deploymentConfig
      */
-    private void dumpStatus(JSONObject deploymentConfig) {
-        System.out.println("\n+========== Deployment Successfully Finished ==========+");
+    private void dumpStatus(Rollout rollout, JSONObject deploymentConfig) {
+        StringBuilder out = new StringBuilder("\n+========== Deployment Successfully Finished ==========+\n");
 
         try {
 
-            System.out.println("Name: " + deploymentConfig
-                    .getJSONObject("metadata").getString("name"));
+            out.append("Name: ").append(deploymentConfig
+                    .getJSONObject("metadata").getString("name")).append('\n');
 
-            System.out.println("Namespace: " + deploymentConfig
-                    .getJSONObject("metadata").getString("namespace"));
+            out.append("Namespace: ").append(deploymentConfig
+                    .getJSONObject("metadata").getString("namespace")).append('\n');
 
-            System.out.println("Latest Version: " + deploymentConfig
-                    .getJSONObject("status").getInt("latestVersion"));
+            out.append("Latest Version: ").append(deploymentConfig
+                    .getJSONObject("status").getInt("latestVersion")).append('\n');
 
-            System.out.println("Deployed Image: " + deploymentConfig
+            out.append("Deployed Image: ").append(deploymentConfig
                     .getJSONObject("spec").getJSONObject("template")
                     .getJSONObject("spec").getJSONArray("containers")
-                    .getJSONObject(0).getString("image"));
+                    .getJSONObject(0).getString("image")).append('\n');
 
-            System.out.println("Updated Replicas: " + deploymentConfig
-                    .getJSONObject("status").get("updatedReplicas"));
+            out.append("Updated Replicas: ").append(deploymentConfig
+                    .getJSONObject("status").get("updatedReplicas")).append('\n');
 
-            System.out.println("Available Replicas: " + deploymentConfig
-                    .getJSONObject("status").get("availableReplicas"));
+            out.append("Available Replicas: ").append(deploymentConfig
+                    .getJSONObject("status").get("availableReplicas")).append('\n');
         }
         catch (Exception ex) {/* do nothing */}
 
-        // That it.
-        System.out.println(
+        // That it, printed at once so concurrent rollouts do not mix the lines.
+        out.append(
                 String.format(
-                        "========== + Updated the resource: %s/%s successfully ==========+",
-                        openshift_project, openshift_service
+                        "========== + Updated the resource: %s/%s successfully%s ==========+",
+                        openshift_project, rollout.target.service,
+                        rollout.cluster.getName().equals(openshift_server) ? "" : " on " + rollout.cluster.getName()
                 )
         );
+        System.out.println(out);
+    }
+
+    /**
+     * Service of the deployment, with its files and state.
+     */
+    private static class ServiceTarget {
+        final String service;
+        final String directory;
+
+        String varsFile;
+        String varsId;
+        String template;
+        String templateId;
+
+        JSONObject deployConfig;
+
+        ServiceTarget(String service, String directory) {
+            this.service = service;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * Rollout of a service on a cluster.
+     */
+    private static class Rollout {
+        final OpenshiftCluster cluster;
+        final ServiceTarget target;
+        final String label;
+
+        OpenshiftClient client;
+        CompletableFuture<JSONObject> currentDeploy;
+
+        Rollout(OpenshiftCluster cluster, ServiceTarget target, String label) {
+            this.cluster = cluster;
+            this.target = target;
+            this.label = label;
+        }
     }
 }
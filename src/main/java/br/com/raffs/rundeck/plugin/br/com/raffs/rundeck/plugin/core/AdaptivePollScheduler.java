@@ -0,0 +1,115 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class AdaptivePollScheduler implements PollScheduler {
+
+    // Class attributes.
+    private long initialDelay;
+    private long minDelay;
+    private long maxDelay;
+    private double multiplier;
+    private double jitter;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public AdaptivePollScheduler() {
+        this.initialDelay = 1000;
+        this.minDelay = 1000;
+        this.maxDelay = 5000;
+        this.multiplier = 1.5;
+        this.jitter = 0.2;
+    }
+
+    /**
+     * Define the time to wait before the first status check, normally
+     * taken from the previous rollouts of the service.
+     *
+     * @param initialDelay delay in milliseconds
+     * @return the instance of the poll scheduler
+     */
+    public AdaptivePollScheduler withInitialDelay(long initialDelay) {
+        this.initialDelay = Math.max(0, initialDelay);
+        return this;
+    }
+
+    /**
+     * Define the delay after the first status check, the next ones
+     * grow from it.
+     *
+     * @param minDelay delay in milliseconds
+     * @return the instance of the poll scheduler
+     */
+    public AdaptivePollScheduler withMinDelay(long minDelay) {
+        this.minDelay = Math.max(1, minDelay);
+        return this;
+    }
+
+    /**
+     * Define the max delay between two status checks.
+     *
+     * @param maxDelay delay in milliseconds
+     * @return the instance of the poll scheduler
+     */
+    public AdaptivePollScheduler withMaxDelay(long maxDelay) {
+        this.maxDelay = Math.max(1, maxDelay);
+        return this;
+    }
+
+    /**
+     * Define how much the delay grows on each status check.
+     *
+     * @param multiplier growth factor (ex: 1.5)
+     * @return the instance of the poll scheduler
+     */
+    public AdaptivePollScheduler withMultiplier(double multiplier) {
+        this.multiplier = Math.max(1.0, multiplier);
+        return this;
+    }
+
+    /**
+     * Define the random variation of each delay, so concurrent jobs
+     * do not check the server at the same time.
+     *
+     * @param jitter fraction of the delay (ex: 0.2 for +/- 20%)
+     * @return the instance of the poll scheduler
+     */
+    public AdaptivePollScheduler withJitter(double jitter) {
+        this.jitter = Math.min(1.0, Math.max(0.0, jitter));
+        return this;
+    }
+
+    /**
+     * Wait the initial delay before the first check, then start from the
+     * min delay and grow it until the max delay.
+     */
+    @Override
+    public long nextDelay(int attempt) {
+        double delay;
+        if (attempt <= 0) delay = initialDelay;
+        else delay = Math.min(maxDelay, Math.max(minDelay, minDelay * Math.pow(multiplier, attempt - 1)));
+
+        // spread the delay on [delay * (1 - jitter), delay * (1 + jitter)].
+        double factor = 1.0 - jitter + ThreadLocalRandom.current().nextDouble() * 2 * jitter;
+        return Math.round(delay * factor);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class CallTracer extends EventListener {
+
+    /**
+     * Create a tracer for the calls of the clients with a trace log, the
+     * other calls have no listener at all.
+     */
+    static final EventListener.Factory FACTORY = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            Object tag = call.request().tag();
+            if (tag instanceof TransferInterceptor.Tag && ((TransferInterceptor.Tag) tag).trace != null) {
+                return new CallTracer(((TransferInterceptor.Tag) tag).trace, call.request());
+            }
+
+            return EventListener.NONE;
+        }
+    };
+
+    // Class attributes.
+    private final TraceLog trace;
+    private final String method;
+    private final String path;
+    private final long startedAt;
+    private final long start;
+
+    // time (System.nanoTime) of the events, 0 when it did not happen.
+    private long dnsStart, dnsEnd;
+    private long connectStart, connectEnd;
+    private long tlsStart, tlsEnd;
+    private long requestStart;
+    private long responseHeaders, responseEnd;
+
+    private String protocol;
+    private int status;
+    private long sent;
+    private long received;
+
+    private CallTracer(TraceLog trace, Request request) {
+        this.trace = trace;
+        this.method = request.method();
+        this.path = pathTemplate(request.url());
+        this.startedAt = System.currentTimeMillis();
+        this.start = System.nanoTime();
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dnsStart = System.nanoTime();
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        dnsEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        tlsStart = System.nanoTime();
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        tlsEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectEnd = System.nanoTime();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        protocol = connection.protocol().toString();
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        // the retries on the same call (ex: without gzip) are timed from the last request.
+        requestStart = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        sent += byteCount;
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        // responseHeadersStart is sent before waiting the server, the headers are read at the first byte.
+        responseHeaders = System.nanoTime();
+        status = response.code();
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        responseEnd = System.nanoTime();
+        received += byteCount;
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        record(null);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        record(ioe.getMessage() != null ? ioe.getMessage() : ioe.getClass().getSimpleName());
+    }
+
+    /**
+     * Add the call to the trace log, with the time (in milliseconds) of each phase:
+     * dns, connect (tcp), tls, ttfb (from the request until the response headers),
+     * transfer (response body) and total.
+     */
+    private void record(String error) {
+        long end = System.nanoTime();
+
+        JSONObject line = new JSONObject();
+        line.put("ts", startedAt);
+        line.put("method", method);
+        line.put("path", path);
+        line.put("status", status);
+        line.put("sent", sent);
+        line.put("received", received);
+        line.put("protocol", protocol);
+        line.put("reused", connectStart == 0);
+        line.put("dns_ms", millis(dnsStart, dnsEnd));
+        line.put("connect_ms", millis(connectStart, tlsStart > 0 ? tlsStart : connectEnd));
+        line.put("tls_ms", millis(tlsStart, tlsEnd));
+        line.put("ttfb_ms", millis(requestStart, responseHeaders));
+        line.put("transfer_ms", millis(responseHeaders, responseEnd));
+        line.put("total_ms", millis(start, end));
+        if (error != null) line.put("error", error);
+
+        trace.record(line.toString());
+    }
+
+    /**
+     * Return the milliseconds between the events, 0 when any of them did not happen.
+     */
+    private static double millis(long from, long to) {
+        if (from == 0 || to == 0 || to < from) return 0;
+        return Math.round((to - from) / 10000.0) / 100.0;
+    }
+
+    /**
+     * Return the path with the names replaced by placeholders, so the calls of
+     * every service are grouped, ex: /oapi/v1/namespaces/{namespace}/deploymentconfigs/{name}/instantiate
+     */
+    static String pathTemplate(HttpUrl url) {
+        List<String> segments = new ArrayList<String>(url.pathSegments());
+        segments.removeAll(Collections.singleton(""));
+
+        StringBuilder template = new StringBuilder();
+        int i = 0;
+        if (! segments.isEmpty() && (segments.get(0).equals("api") || segments.get(0).equals("oapi"))) {
+            for (; i < Math.min(2, segments.size()); i++) template.append('/').append(segments.get(i));
+
+            if (i + 1 < segments.size() && segments.get(i).equals("namespaces")) {
+                template.append("/namespaces/{namespace}");
+                i += 2;
+            }
+
+            // the resource, its name and the subresource.
+            if (i < segments.size()) template.append('/').append(segments.get(i++));
+            if (i < segments.size()) {
+                template.append("/{name}");
+                i += 1;
+            }
+        }
+
+        for (; i < segments.size(); i++) template.append('/').append(segments.get(i));
+        return template.length() == 0 ? "/" : template.toString();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class CircuitBreaker {
+
+    // Breakers shared by every execution on the JVM, one for each server.
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS =
+            new ConcurrentHashMap<String, CircuitBreaker>();
+
+    // State of the breaker.
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    // Class attributes.
+    private final String server;
+    private volatile int threshold;
+    private volatile long cooldown;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    private CircuitBreaker(String server) {
+        this.server = server;
+        this.threshold = 5;
+        this.cooldown = 30000;
+    }
+
+    /**
+     * Return the breaker of the server, shared by all the clients of the server.
+     *
+     * @param server base url of the server
+     * @return the breaker of the server
+     */
+    public static CircuitBreaker forServer(String server) {
+        CircuitBreaker breaker = BREAKERS.get(server);
+        if (breaker == null) {
+            CircuitBreaker created = new CircuitBreaker(server);
+            breaker = BREAKERS.putIfAbsent(server, created);
+            if (breaker == null) breaker = created;
+        }
+
+        return breaker;
+    }
+
+    /**
+     * Define how many consecutive failures open the breaker, 0 disables it.
+     *
+     * @param threshold number of consecutive failures
+     * @return the instance of the breaker
+     */
+    public CircuitBreaker withThreshold(int threshold) {
+        this.threshold = Math.max(0, threshold);
+        return this;
+    }
+
+    /**
+     * Define how long the requests are refused once the breaker opens,
+     * a single request is then allowed to test the server.
+     *
+     * @param cooldown time in milliseconds
+     * @return the instance of the breaker
+     */
+    public CircuitBreaker withCooldown(long cooldown) {
+        this.cooldown = Math.max(0, cooldown);
+        return this;
+    }
+
+    /**
+     * Return true when the request could be sent to the server.
+     */
+    public synchronized boolean allowRequest() {
+        if (threshold == 0 || state == State.CLOSED) return true;
+
+        if (System.currentTimeMillis() - openedAt >= cooldown) {
+            // let a single request for each cooldown test whether the server is back.
+            state = State.HALF_OPEN;
+            openedAt = System.currentTimeMillis();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Record a request answered by the server.
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    /**
+     * Record a request failed by the server, or not answered at all.
+     */
+    public synchronized void onFailure() {
+        failures += 1;
+        if (threshold > 0 && (state == State.HALF_OPEN || failures >= threshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Record the response of the server, the server errors are failures.
+     *
+     * @param statusCode status code of the response
+     */
+    public void onResponse(int statusCode) {
+        if (statusCode >= 500 && statusCode != 501) onFailure();
+        else onSuccess();
+    }
+
+    /**
+     * Describe why the requests are refused.
+     */
+    public synchronized String describe() {
+        return String.format(
+                "Circuit breaker open for %s after %d consecutive failures, retrying in %ds",
+                server, failures, Math.max(0, (openedAt + cooldown - System.currentTimeMillis() + 999) / 1000)
+        );
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+public class FixedPollScheduler implements PollScheduler {
+
+    // Class attributes.
+    private final long interval;
+
+    /**
+     * Class constructor.
+     *
+     * @param interval time in milliseconds between the status checks
+     */
+    public FixedPollScheduler(long interval) {
+        this.interval = Math.max(0, interval);
+    }
+
+    /**
+     * Check the status right away, then on every interval.
+     */
+    @Override
+    public long nextDelay(int attempt) {
+        return attempt <= 0 ? 0 : interval;
+    }
+}
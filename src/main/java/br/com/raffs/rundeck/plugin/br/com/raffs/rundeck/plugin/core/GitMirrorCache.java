@@ -0,0 +1,523 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+public class GitMirrorCache {
+
+    // Locks are shared by every instance on the JVM, since Rundeck
+    // runs all the concurrent jobs inside the same process.
+    private static final ConcurrentMap<String, ReentrantReadWriteLock> LOCKS =
+            new ConcurrentHashMap<String, ReentrantReadWriteLock>();
+
+    // Size (in bytes) of each mirror directory, recorded after the syncs that changed
+    // it, so the mirrors are not walked again on every step.
+    private static final ConcurrentMap<String, Long> SIZES = new ConcurrentHashMap<String, Long>();
+
+    // Class attributes.
+    private String cacheDir;
+    private long maxSize;
+    private String username;
+    private String password;
+    private int timeout;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public GitMirrorCache() {
+        this.cacheDir = "/var/tmp/ocdepl-cache/git";
+        this.maxSize = 1024L * 1024L * 1024L;
+        this.timeout = 30;
+    }
+
+    /**
+     * Define the directory where the bare mirrors will be stored.
+     *
+     * @param cacheDir local directory of the mirrors
+     * @return the instance of the mirror cache
+     */
+    public GitMirrorCache withCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    /**
+     * Define the max size (in megabytes) of all the mirrors together,
+     * when exceeded the least recently used mirrors are removed.
+     *
+     * @param megabytes max size of the cache directory
+     * @return the instance of the mirror cache
+     */
+    public GitMirrorCache withMaxSize(long megabytes) {
+        this.maxSize = megabytes * 1024L * 1024L;
+        return this;
+    }
+
+    /**
+     * Define the username/password used to fetch the repository.
+     *
+     * @param username git username
+     * @param password git password
+     * @return the instance of the mirror cache
+     */
+    public GitMirrorCache withCredentials(String username, String password) {
+        this.username = username;
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * Define the network timeout (in seconds) used on the git transport.
+     *
+     * @param timeout time in seconds
+     * @return the instance of the mirror cache
+     */
+    public GitMirrorCache withTimeout(int timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Responsible to validate the parameters and create the cache directory.
+     *
+     * @return the instance of the mirror cache
+     */
+    public GitMirrorCache build() throws Exception {
+        File directory = new File(this.cacheDir);
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new Exception(
+                    String.format("Could not create the git cache directory: %s", this.cacheDir)
+            );
+
+        return this;
+    }
+
+    /**
+     * Bring the local mirror of (url, branch) up to date, cloning it on the first
+     * usage and fetching only the new objects afterwards. The returned mirror holds
+     * a shared lock so it can't be evicted or fetched while in use, so make sure
+     * to close it as soon as the files were read.
+     *
+     * @param url git repository url
+     * @param branch branch that will be deployed
+     * @return opened mirror pointing to the latest commit of the branch
+     */
+    public Mirror open(String url, String branch) throws Exception {
+        String name = mirrorName(url, branch);
+        File directory = new File(this.cacheDir, name);
+        ReentrantReadWriteLock lock = lockFor(name);
+
+        boolean changed = false;
+        lock.writeLock().lock();
+        try {
+            changed = sync(directory, url, branch);
+            if (changed) SIZES.put(directory.getAbsolutePath(), directorySize(directory));
+
+            // Downgrade to a shared lock, so concurrent jobs could read the same mirror.
+            lock.readLock().lock();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            Repository repository = Git.open(directory).getRepository();
+            Ref ref = repository.exactRef(Constants.R_HEADS + branch);
+            if (ref == null) {
+                repository.close();
+                throw new Exception(
+                        String.format("Could not find the branch '%s' on %s", branch, url)
+                );
+            }
+
+            RevWalk walk = new RevWalk(repository);
+            try {
+                RevTree tree = walk.parseCommit(ref.getObjectId()).getTree();
+                return new Mirror(directory, repository, ref.getObjectId(), tree, lock);
+            }
+            catch (Exception ex) {
+                repository.close();
+                throw ex;
+            }
+            finally {
+                walk.close();
+            }
+        }
+        catch (Exception ex) {
+            lock.readLock().unlock();
+            throw ex;
+        }
+        finally {
+            // the cache only grows when a mirror changed.
+            if (changed) evict(name);
+        }
+    }
+
+    /**
+     * Clone the mirror when it does not exist, otherwise execute an
+     * incremental fetch of the branch.
+     *
+     * @return whether the mirror was cloned or the branch was updated
+     */
+    private boolean sync(File directory, String url, String branch) throws Exception {
+        UsernamePasswordCredentialsProvider credentials = null;
+        if (this.username != null && this.password != null)
+            credentials = new UsernamePasswordCredentialsProvider(this.username, this.password);
+
+        String refSpec = String.format("+%s%s:%s%s", Constants.R_HEADS, branch, Constants.R_HEADS, branch);
+        boolean changed = true;
+        if (new File(directory, Constants.HEAD).exists()) {
+            Git git = Git.open(directory);
+            try {
+                changed = ! git.fetch()
+                        .setRefSpecs(new RefSpec(refSpec))
+                        .setCredentialsProvider(credentials)
+                        .setTimeout(this.timeout)
+                        .call()
+                        .getTrackingRefUpdates()
+                        .isEmpty();
+            }
+            finally {
+                git.close();
+            }
+        }
+        else {
+            deleteDirectory(directory);
+
+            try {
+                Git.cloneRepository()
+                        .setURI(url)
+                        .setDirectory(directory)
+                        .setBare(true)
+                        .setBranch(branch)
+                        .setBranchesToClone(Collections.singletonList(Constants.R_HEADS + branch))
+                        .setCredentialsProvider(credentials)
+                        .setTimeout(this.timeout)
+                        .call()
+                        .close();
+            }
+            catch (Exception ex) {
+                // never keep a half-cloned mirror around.
+                deleteDirectory(directory);
+                throw ex;
+            }
+        }
+
+        // mark the mirror as recently used for the LRU eviction.
+        directory.setLastModified(System.currentTimeMillis());
+
+        return changed;
+    }
+
+    /**
+     * Remove the least recently used mirrors while the cache is bigger than
+     * the max size. Mirrors being used by other jobs are skipped. The recorded
+     * sizes are used, only the mirrors not seen yet by the JVM are measured.
+     */
+    private void evict(String current) {
+        File[] mirrors = new File(this.cacheDir).listFiles();
+        if (mirrors == null) return;
+
+        final Map<File, Long> sizes = new HashMap<File, Long>();
+        long total = 0;
+        for (File mirror : mirrors) {
+            if (! mirror.isDirectory()) continue;
+
+            Long size = SIZES.get(mirror.getAbsolutePath());
+            if (size == null) {
+                size = directorySize(mirror);
+                SIZES.put(mirror.getAbsolutePath(), size);
+            }
+            sizes.put(mirror, size);
+            total += size;
+        }
+
+        if (total <= this.maxSize) return;
+
+        List<File> candidates = new ArrayList<File>(sizes.keySet());
+        Collections.sort(candidates, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return Long.compare(left.lastModified(), right.lastModified());
+            }
+        });
+
+        for (File mirror : candidates) {
+            if (total <= this.maxSize) break;
+            if (mirror.getName().equals(current)) continue;
+
+            ReentrantReadWriteLock lock = lockFor(mirror.getName());
+            if (lock.writeLock().tryLock()) {
+                try {
+                    deleteDirectory(mirror);
+                    SIZES.remove(mirror.getAbsolutePath());
+                    total -= sizes.get(mirror);
+                }
+                finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the lock of the mirror, creating it on the first usage.
+     */
+    private static ReentrantReadWriteLock lockFor(String name) {
+        ReentrantReadWriteLock lock = LOCKS.get(name);
+        if (lock == null) {
+            ReentrantReadWriteLock created = new ReentrantReadWriteLock();
+            lock = LOCKS.putIfAbsent(name, created);
+            if (lock == null) lock = created;
+        }
+
+        return lock;
+    }
+
+    /**
+     * Define the mirror directory name from the repository url and branch.
+     */
+    private static String mirrorName(String url, String branch) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        byte[] hash = digest.digest(
+                String.format("%s#%s", url, branch).getBytes(Charset.forName("UTF-8")));
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 10; i++) name.append(String.format("%02x", hash[i]));
+
+        return name.append(".git").toString();
+    }
+
+    /**
+     * Return the size in bytes of all files inside the directory.
+     */
+    private static long directorySize(File directory) {
+        final long[] size = { 0 };
+        try {
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size[0] += attrs.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException ex) { /* NOTHING */ }
+
+        return size[0];
+    }
+
+    /**
+     * Remove the directory and all of its content.
+     */
+    private static void deleteDirectory(File directory) {
+        if (! directory.exists()) return;
+
+        try {
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException ex) { /* NOTHING */ }
+    }
+
+    /**
+     * Convert the directory glob to a regular expression.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i += 1;
+            }
+            else if (c == '*') regex.append("[^/]*");
+            else if (c == '?') regex.append("[^/]");
+            else regex.append(Pattern.quote(String.valueOf(c)));
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * Local bare mirror of a (repository, branch), held open by a
+     * shared lock until closed. The mirror must be closed by the same
+     * thread that opened it.
+     */
+    public static class Mirror implements Closeable {
+
+        // Class attributes.
+        private final File directory;
+        private final Repository repository;
+        private final ObjectId head;
+        private final RevTree tree;
+        private final ReentrantReadWriteLock lock;
+        private boolean closed;
+
+        Mirror(File directory, Repository repository, ObjectId head, RevTree tree, ReentrantReadWriteLock lock) {
+            this.directory = directory;
+            this.repository = repository;
+            this.head = head;
+            this.tree = tree;
+            this.lock = lock;
+        }
+
+        /**
+         * Look for a file on the head commit without checking out the
+         * working tree.
+         *
+         * @param path file path relative to the repository root
+         * @return the blob id of the file, or null when it does not exist
+         */
+        public ObjectId findFile(String path) throws IOException {
+            TreeWalk walk = TreeWalk.forPath(repository, path, tree);
+            if (walk == null) return null;
+
+            try {
+                if ((walk.getRawMode(0) & FileMode.TYPE_MASK) != FileMode.TYPE_FILE) return null;
+                return walk.getObjectId(0);
+            }
+            finally {
+                walk.close();
+            }
+        }
+
+        /**
+         * Look for the directories of the head commit matching the glob,
+         * where '*' matches a path segment, '**' any number of segments
+         * and '?' one character.
+         *
+         * @param glob directory pattern relative to the repository root (ex: services/*)
+         * @return the matched directories, sorted by path
+         */
+        public List<String> findDirectories(String glob) throws IOException {
+            Pattern pattern = Pattern.compile(globToRegex(glob));
+            List<String> directories = new ArrayList<String>();
+
+            TreeWalk walk = new TreeWalk(repository);
+            try {
+                walk.addTree(tree);
+                walk.setRecursive(false);
+
+                while (walk.next()) {
+                    if (! walk.isSubtree()) continue;
+
+                    String path = walk.getPathString();
+                    if (pattern.matcher(path).matches()) directories.add(path);
+                    walk.enterSubtree();
+                }
+            }
+            finally {
+                walk.close();
+            }
+
+            Collections.sort(directories);
+            return directories;
+        }
+
+        /**
+         * Read the content of a blob straight from the object database.
+         *
+         * @param blob the blob id returned by findFile
+         * @return the file content as UTF-8 string
+         */
+        public String readFile(ObjectId blob) throws IOException {
+            return new String(
+                    repository.open(blob, Constants.OBJ_BLOB).getCachedBytes(Integer.MAX_VALUE),
+                    Charset.forName("UTF-8")
+            );
+        }
+
+        /**
+         * Return the directory of the bare mirror.
+         */
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Return the opened mirror repository.
+         */
+        public Repository getRepository() {
+            return repository;
+        }
+
+        /**
+         * Return the commit id of the branch after the fetch.
+         */
+        public ObjectId getHead() {
+            return head;
+        }
+
+        /**
+         * Close the repository and release the shared lock.
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+
+            repository.close();
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -18,29 +18,117 @@
 package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
 
 import okhttp3.*;
+import okio.BufferedSource;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import javax.xml.bind.DatatypeConverter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 public class HTTPClient {
 
+    // OkHttp clients shared by every execution on the JVM, one for each
+    // server/timeout profile, so the connections, TLS sessions and
+    // thread pools are reused between the steps.
+    private static final ConcurrentMap<String, OkHttpClient> CLIENTS =
+            new ConcurrentHashMap<String, OkHttpClient>();
+
+    // Watches keep the connection open until the rollout finishes, so they run
+    // on their own dispatcher to not hold the slots of the regular calls.
+    private static final Dispatcher WATCH_DISPATCHER = new Dispatcher();
+    static {
+        WATCH_DISPATCHER.setMaxRequests(256);
+        WATCH_DISPATCHER.setMaxRequestsPerHost(256);
+    }
+
+    // Delays the retries of the async calls, without holding the OkHttp threads.
+    private static final ScheduledExecutorService RETRY_SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "ocdepl-http-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     // Class attributes.
     private int timeout;
+    private int poolMaxIdle;
+    private int poolKeepAlive;
+    private int breakerThreshold;
+    private long breakerCooldown;
     private String baseUrl;
-    private String authorization;
+    private volatile String authorization;
+    private AuthorizationProvider authorizationProvider;
+    private RetryPolicy retryPolicy;
+    private CircuitBreaker breaker;
+    private boolean gzipRequests;
+    private TraceLog traceLog;
+    private final TransferStats transferStats = new TransferStats();
     private OkHttpClient client;
 
     // Define the default media-type which is JSON
     public static final MediaType JSON
             = MediaType.parse("application/json; charset=utf-8");
 
+    // Define the media-types of the patches.
+    public static final MediaType MERGE_PATCH
+            = MediaType.parse("application/merge-patch+json; charset=utf-8");
+    public static final MediaType STRATEGIC_MERGE_PATCH
+            = MediaType.parse("application/strategic-merge-patch+json; charset=utf-8");
+
     // Define enum-type for HTTP Methods.
     private enum HttpMethod {
-        POST, PUT, GET
+        POST, PUT, PATCH, GET
+    }
+
+    /**
+     * Provide a new Authorization header when the
+     * server rejects the current one, given on rejected.
+     */
+    public interface AuthorizationProvider {
+        String refresh(String rejected) throws Exception;
+    }
+
+    /**
+     * Read the response body as it's received, instead of
+     * parsing it as a whole json-object.
+     */
+    public interface BodyReader<T> {
+        T read(int statusCode, Reader body) throws Exception;
+    }
+
+    /**
+     * Receive the events streamed by a watch request.
+     */
+    public interface WatchHandler {
+
+        /**
+         * Called for each event, type is one of ADDED, MODIFIED, DELETED or ERROR.
+         */
+        void onEvent(String type, JSONObject object);
+
+        /**
+         * Called when the server ends the stream (200) or refuses the watch.
+         */
+        void onClosed(int statusCode);
+
+        /**
+         * Called when the connection fails or the watch is cancelled.
+         */
+        void onFailure(Exception ex);
     }
 
     /**
@@ -49,7 +137,11 @@ public class HTTPClient {
      */
     public HTTPClient() {
         this.timeout = 30;
-        client = new OkHttpClient();
+        this.poolMaxIdle = 5;
+        this.poolKeepAlive = 300;
+        this.breakerThreshold = 5;
+        this.breakerCooldown = 30;
+        this.retryPolicy = new RetryPolicy();
     }
 
     /**
@@ -76,6 +168,70 @@ public class HTTPClient {
         return this;
     }
 
+    /**
+     * Define the connection pool of the shared client.
+     *
+     * @param maxIdle max number of idle connections kept open
+     * @param keepAlive time in seconds an idle connection is kept open
+     * @return the instance of the http-class.
+     */
+    public HTTPClient withConnectionPool(int maxIdle, int keepAlive) {
+        this.poolMaxIdle = maxIdle;
+        this.poolKeepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * Define how the requests failed by transient errors are sent again.
+     *
+     * @param retryPolicy the retry policy
+     * @return the instance of the http-class.
+     */
+    public HTTPClient withRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Define whether to compress the request bodies with gzip. A server which
+     * can't read a compressed body receives the next ones as is. The responses
+     * are always asked compressed and decoded by OkHttp.
+     *
+     * @param gzipRequests whether to compress the request bodies
+     * @return the instance of the http-class.
+     */
+    public HTTPClient withGzipRequests(boolean gzipRequests) {
+        this.gzipRequests = gzipRequests;
+        return this;
+    }
+
+    /**
+     * Define the trace log of the requests, recording the time spent on the dns
+     * lookup, connection, tls handshake, first byte and body transfer of each call.
+     *
+     * @param traceLog the trace log, null to not trace the requests
+     * @return the instance of the http-class.
+     */
+    public HTTPClient withTraceLog(TraceLog traceLog) {
+        this.traceLog = traceLog;
+        return this;
+    }
+
+    /**
+     * Define the circuit breaker of the server, shared by every execution:
+     * after the consecutive failures the requests are refused until the cooldown
+     * ends, so the concurrent jobs do not pile up on a struggling server.
+     *
+     * @param threshold number of consecutive failures opening the breaker, 0 disables it
+     * @param cooldown time in seconds the requests are refused
+     * @return the instance of the http-class.
+     */
+    public HTTPClient withCircuitBreaker(int threshold, long cooldown) {
+        this.breakerThreshold = threshold;
+        this.breakerCooldown = cooldown;
+        return this;
+    }
+
     /**
      * Responsible to initialize class that uses
      * parameters defined on the construction.
@@ -84,16 +240,87 @@ public class HTTPClient {
      */
     public HTTPClient build() {
 
-        // Instance the OkHttpClient on the class.
-        this.client = new OkHttpClient.Builder()
-                .writeTimeout(timeout, TimeUnit.SECONDS)
-                .readTimeout(timeout, TimeUnit.SECONDS)
-                .connectTimeout(timeout, TimeUnit.SECONDS)
-                .build();
+        // Reuse the OkHttpClient of the same server/timeout profile.
+        String key = String.format("%s|%d|%d|%d", baseUrl, timeout, poolMaxIdle, poolKeepAlive);
+        OkHttpClient shared = CLIENTS.get(key);
+        if (shared == null) {
+            OkHttpClient created = new OkHttpClient.Builder()
+                    .writeTimeout(timeout, TimeUnit.SECONDS)
+                    .readTimeout(timeout, TimeUnit.SECONDS)
+                    .connectTimeout(timeout, TimeUnit.SECONDS)
+                    .connectionPool(new ConnectionPool(poolMaxIdle, poolKeepAlive, TimeUnit.SECONDS))
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .dispatcher(asyncDispatcher())
+                    .addInterceptor(new TransferInterceptor(false))
+                    .addNetworkInterceptor(new TransferInterceptor(true))
+                    .eventListenerFactory(CallTracer.FACTORY)
+                    .build();
+
+            shared = CLIENTS.putIfAbsent(key, created);
+            if (shared == null) shared = created;
+        }
 
+        this.client = shared;
+        this.breaker = CircuitBreaker.forServer(baseUrl)
+                .withThreshold(breakerThreshold)
+                .withCooldown(breakerCooldown * 1000);
         return this;
     }
 
+    /**
+     * Open a connection to the server in background, so the TCP and TLS
+     * handshakes are done while the step is preparing the deployment.
+     * Nothing is sent when there's already an idle connection on the pool.
+     */
+    public void prewarm() {
+        if (this.client == null || this.client.connectionPool().idleConnectionCount() > 0) return;
+
+        Request request = new Request.Builder()
+                .url(this.joinPath("/healthz"))
+                .build();
+
+        this.client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) { /* NOTHING */ }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
+
+    /**
+     * Return the shared OkHttpClient, so callers could derive a client with
+     * different settings by using newBuilder() that keeps the same
+     * connection pool and dispatcher.
+     */
+    OkHttpClient getHttpClient() {
+        return client;
+    }
+
+    /**
+     * Return the bytes transferred by the requests of this client, counted
+     * before and after the compression.
+     */
+    public TransferStats getTransferStats() {
+        return transferStats;
+    }
+
+    /**
+     * Return the retry policy of the requests.
+     */
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Return the base url of the server.
+     */
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
     /**
      * Define the Authorization Token String for Openshift.
      *
@@ -105,6 +332,18 @@ public class HTTPClient {
         return this;
     }
 
+    /**
+     * Define who provides a new Authorization when the server answers
+     * 401 to a request, the request is then sent once again.
+     *
+     * @param authorizationProvider the provider of new authorizations
+     * @return the instance of the http-class.
+     */
+    public HTTPClient withAuthorizationProvider(AuthorizationProvider authorizationProvider) {
+        this.authorizationProvider = authorizationProvider;
+        return this;
+    }
+
     /**
      * Responsible to send GET-METHOD Requests to the server
      * then return the results.
@@ -113,7 +352,43 @@ public class HTTPClient {
      * @return json-object with the content
      */
     public JSONObject get(String path) throws Exception {
-        return this.request(path, null, HttpMethod.GET);
+        return this.request(path, null, HttpMethod.GET, JSON);
+    }
+
+    /**
+     * Send a GET request giving the response body to the reader, so
+     * large responses are consumed without being buffered.
+     *
+     * @param path path on the http server
+     * @param reader consumer of the response body
+     * @return the value returned by the reader
+     */
+    public <T> T get(String path, BodyReader<T> reader) throws Exception {
+        if (this.client == null)
+            throw new Exception(
+                    "Could not find valid-value for client" +
+                            "Please, make sure to use build() method"
+            );
+
+        Request request = this.buildRequest(path, null, HttpMethod.GET, JSON);
+        Response response = this.send(request);
+
+        // The token could be expired or revoked, ask for a new one and try again.
+        if (response.code() == 401 && this.authorizationProvider != null) {
+            String refreshed = this.authorizationProvider.refresh(request.header("Authorization"));
+            if (refreshed != null) {
+                response.close();
+                this.authorization = refreshed;
+                response = this.send(this.buildRequest(path, null, HttpMethod.GET, JSON));
+            }
+        }
+
+        try {
+            return reader.read(response.code(), response.body().charStream());
+        }
+        finally {
+            response.close();
+        }
     }
 
     /**
@@ -124,7 +399,7 @@ public class HTTPClient {
      * @return json-object with the content
      */
     public JSONObject post(String path, JSONObject data) throws Exception {
-        return this.request(path, data, HttpMethod.POST);
+        return this.request(path, data, HttpMethod.POST, JSON);
     }
 
     /**
@@ -136,7 +411,120 @@ public class HTTPClient {
      * @throws Exception
      */
     public JSONObject put(String path, JSONObject data) throws Exception {
-        return this.request(path, data, HttpMethod.PUT);
+        return this.request(path, data, HttpMethod.PUT, JSON);
+    }
+
+    /**
+     * Send a patch request to the server, the media-type tells
+     * how the server applies the patch.
+     *
+     * @param path path on the http server
+     * @param data the patch
+     * @param mediaType MERGE_PATCH or STRATEGIC_MERGE_PATCH
+     * @return json-object with the content
+     */
+    public JSONObject patch(String path, JSONObject data, MediaType mediaType) throws Exception {
+        return this.request(path, data, HttpMethod.PATCH, mediaType);
+    }
+
+    /**
+     * Send a GET request without blocking the caller thread.
+     *
+     * @param path path on the http server
+     * @return future completed with the json-object of the response
+     */
+    public CompletableFuture<JSONObject> getAsync(String path) throws Exception {
+        return this.requestAsync(path, null, HttpMethod.GET, JSON);
+    }
+
+    /**
+     * Send a POST request without blocking the caller thread.
+     *
+     * @param path path on the http server
+     * @param data the json body
+     * @return future completed with the json-object of the response
+     */
+    public CompletableFuture<JSONObject> postAsync(String path, JSONObject data) throws Exception {
+        return this.requestAsync(path, data, HttpMethod.POST, JSON);
+    }
+
+    /**
+     * Send a PUT request without blocking the caller thread.
+     *
+     * @param path path on the http server
+     * @param data the json body
+     * @return future completed with the json-object of the response
+     */
+    public CompletableFuture<JSONObject> putAsync(String path, JSONObject data) throws Exception {
+        return this.requestAsync(path, data, HttpMethod.PUT, JSON);
+    }
+
+    /**
+     * Send a PATCH request without blocking the caller thread.
+     *
+     * @param path path on the http server
+     * @param data the patch
+     * @param mediaType MERGE_PATCH or STRATEGIC_MERGE_PATCH
+     * @return future completed with the json-object of the response
+     */
+    public CompletableFuture<JSONObject> patchAsync(String path, JSONObject data,
+                                                    MediaType mediaType) throws Exception {
+        return this.requestAsync(path, data, HttpMethod.PATCH, mediaType);
+    }
+
+    /**
+     * Open a watch request, the server keeps the connection open and streams
+     * one json event per line, given to the handler on a background thread.
+     *
+     * @param path path on the http server, including watch=true
+     * @param handler receiver of the events
+     * @return the call, used to cancel the watch
+     */
+    public Call watch(String path, final WatchHandler handler) throws Exception {
+        if (this.client == null)
+            throw new Exception(
+                    "Could not find valid-value for client" +
+                            "Please, make sure to use build() method"
+            );
+
+        OkHttpClient watchClient = this.client.newBuilder()
+                .readTimeout(0, TimeUnit.SECONDS)
+                .dispatcher(WATCH_DISPATCHER)
+                .build();
+
+        Call call = watchClient.newCall(this.buildRequest(path, null, HttpMethod.GET, JSON));
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                handler.onFailure(ex);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    if (response.code() == 200) {
+                        BufferedSource source = response.body().source();
+                        String line;
+                        while ((line = source.readUtf8Line()) != null) {
+                            if (line.trim().isEmpty()) continue;
+
+                            JSONObject event = new JSONObject(line);
+                            handler.onEvent(event.getString("type"), event.getJSONObject("object"));
+                        }
+                    }
+
+                    handler.onClosed(response.code());
+                }
+                catch (Exception ex) {
+                    handler.onFailure(ex);
+                }
+                finally {
+                    response.close();
+                }
+            }
+        });
+
+        return call;
     }
 
     /**
@@ -146,7 +534,8 @@ public class HTTPClient {
      * @param path path on the http server
      * @return json-object with the content
      */
-    private JSONObject request(String path, JSONObject data, HttpMethod type) throws Exception {
+    private JSONObject request(String path, JSONObject data, HttpMethod type,
+                               MediaType mediaType) throws Exception {
         JSONObject response;
 
         if (this.client == null)
@@ -161,11 +550,192 @@ public class HTTPClient {
                             "ensure the path is given on arguments"
             );
 
+        Request request = this.buildRequest(path, data, type, mediaType);
+        response = this.execute(request);
+
+        // The token could be expired or revoked, ask for a new one and try again.
+        if (response.getInt("statusCode") == 401 && this.authorizationProvider != null) {
+            String refreshed = this.authorizationProvider.refresh(request.header("Authorization"));
+            if (refreshed != null) {
+                this.authorization = refreshed;
+                response = this.execute(this.buildRequest(path, data, type, mediaType));
+            }
+        }
+
+        return response;
+    }
+
+    /**
+     * Enqueue the request on the client dispatcher, the future is completed
+     * from the OkHttp callback thread with the same json-object that
+     * request() returns, including the statusCode.
+     *
+     * @param path path on the http server
+     * @param data the json body, when it's a POST/PUT/PATCH request
+     * @param type the http method
+     * @param mediaType the media-type of the json body
+     * @return future completed with the json-object of the response
+     */
+    private CompletableFuture<JSONObject> requestAsync(final String path, final JSONObject data,
+                                                       final HttpMethod type,
+                                                       final MediaType mediaType) throws Exception {
+        if (this.client == null)
+            throw new Exception(
+                    "Could not find valid-value for client" +
+                            "Please, make sure to use build() method"
+            );
+
+        if (path == null)
+            throw new Exception(
+                    "Could not find a valid path, please ensure"+
+                            "ensure the path is given on arguments"
+            );
+
+        final CompletableFuture<JSONObject> future = new CompletableFuture<JSONObject>();
+        this.enqueue(this.buildRequest(path, data, type, mediaType), new Callback() {
+            private boolean retried = false;
+            private int attempt = 1;
+
+            @Override
+            public void onFailure(Call call, IOException ex) {
+                if (! (ex instanceof CircuitOpenException)) {
+                    breaker.onFailure();
+
+                    if (attempt < retryPolicy.getMaxAttempts() && retryPolicy.isRetryable(type.name(), ex)) {
+                        retry(call.request(), null);
+                        return;
+                    }
+                }
+
+                future.complete(unavailable(ex));
+            }
+
+            @Override
+            public void onResponse(Call call, Response httpResponse) {
+                breaker.onResponse(httpResponse.code());
+                if (attempt < retryPolicy.getMaxAttempts() && retryPolicy.isRetryable(type.name(), httpResponse.code())) {
+                    String retryAfter = httpResponse.header("Retry-After");
+                    httpResponse.close();
+                    retry(call.request(), retryAfter);
+                    return;
+                }
+
+                JSONObject response = parse(httpResponse);
+
+                try {
+                    // The token could be expired or revoked, ask for a new one and try again.
+                    if (response.getInt("statusCode") == 401 && authorizationProvider != null && ! retried) {
+                        String refreshed = authorizationProvider.refresh(call.request().header("Authorization"));
+                        if (refreshed != null) {
+                            retried = true;
+                            authorization = refreshed;
+                            enqueue(buildRequest(path, data, type, mediaType), this);
+                            return;
+                        }
+                    }
+
+                    future.complete(response);
+                }
+                catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            }
+
+            /**
+             * Send the request again after the backoff delay.
+             */
+            private void retry(final Request request, String retryAfter) {
+                final Callback callback = this;
+                RETRY_SCHEDULER.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        enqueue(request, callback);
+                    }
+                }, retryPolicy.nextDelay(attempt++, retryAfter), TimeUnit.MILLISECONDS);
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * Send the request on background, unless the circuit breaker is open.
+     */
+    private void enqueue(Request request, Callback callback) {
+        Call call = client.newCall(request);
+        if (! breaker.allowRequest()) {
+            callback.onFailure(call, new CircuitOpenException(breaker.describe()));
+            return;
+        }
+
+        call.enqueue(callback);
+    }
+
+    /**
+     * Send the request, sending it again while it fails with transient errors
+     * and the retry policy allows. The circuit breaker of the server is told of
+     * every attempt, and no request is sent while it's open.
+     *
+     * @param request the request to be sent
+     * @return the last response
+     * @throws IOException when the last attempt could not reach the server
+     */
+    private Response send(Request request) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (! breaker.allowRequest()) throw new CircuitOpenException(breaker.describe());
+
+            Response response;
+            try {
+                response = client.newCall(request).execute();
+            }
+            catch (IOException ex) {
+                breaker.onFailure();
+                if (attempt >= retryPolicy.getMaxAttempts() || ! retryPolicy.isRetryable(request.method(), ex)) throw ex;
+
+                pause(retryPolicy.nextDelay(attempt, null));
+                continue;
+            }
+
+            breaker.onResponse(response.code());
+            if (attempt >= retryPolicy.getMaxAttempts() || ! retryPolicy.isRetryable(request.method(), response.code())) {
+                return response;
+            }
+
+            String retryAfter = response.header("Retry-After");
+            response.close();
+            pause(retryPolicy.nextDelay(attempt, retryAfter));
+        }
+    }
+
+    /**
+     * Wait before the next attempt.
+     */
+    private static void pause(long delay) throws IOException {
+        try {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry the request");
+        }
+    }
+
+    /**
+     * Build the http request with the authorization headers.
+     *
+     * @param path path on the http server
+     * @param data the json body, when it's a POST/PUT/PATCH request
+     * @param type the http method
+     * @param mediaType the media-type of the json body
+     * @return the request ready to be sent
+     */
+    private Request buildRequest(String path, JSONObject data, HttpMethod type,
+                                 MediaType mediaType) throws Exception {
         RequestBody body;
         Request request;
         switch (type) {
             case POST:
-                body = RequestBody.create(JSON, Utils.parserString(data.toString()));
+                body = RequestBody.create(mediaType, data.toString());
                 if (this.authorization != null) {
                     request = new Request.Builder()
                             .addHeader("Authorization", this.authorization)
@@ -185,7 +755,7 @@ public class HTTPClient {
 
             case PUT:
 
-                body = RequestBody.create(JSON, Utils.parserString(data.toString()));
+                body = RequestBody.create(mediaType, data.toString());
                 if (this.authorization != null) {
                     request = new Request.Builder()
                             .addHeader("Authorization", this.authorization)
@@ -203,58 +773,131 @@ public class HTTPClient {
                 }
                 break;
 
+            case PATCH:
+
+                body = RequestBody.create(mediaType, data.toString());
+                if (this.authorization != null) {
+                    request = new Request.Builder()
+                            .addHeader("Authorization", this.authorization)
+                            .url(this.joinPath(path))
+                            .patch(body)
+                            .build();
+                }
+                else {
+                    request = new Request.Builder()
+                            .url(this.joinPath(path))
+                            .patch(body)
+                            .build();
+                }
+                break;
+
             case GET:
                 if (this.authorization != null) {
                     request = new Request.Builder()
                             .header("Authorization", this.authorization)
-                            .addHeader("Content-Type", "application/json")
                             .url(this.joinPath(path))
                             .build();
                 }
                 else {
                     request = new Request.Builder()
                             .url(this.joinPath(path))
-                            .addHeader("Content-Type", "application/json")
                             .build();
                 }
                 break;
 
             default:
                 throw new Exception(
-                        "Could identify the TYPE must either POST/PUT/GET "+
+                        "Could identify the TYPE must either POST/PUT/PATCH/GET "+
                                 "for requests."
                 );
 
         }
 
+        // tag the request, so the bytes are counted on this client stats and the call traced.
+        return request.newBuilder()
+                .tag(new TransferInterceptor.Tag(this.transferStats, this.gzipRequests, this.traceLog))
+                .build();
+    }
+
+    /**
+     * Send the request and parse the response body, the status code
+     * is added to the response as statusCode.
+     *
+     * @param request the request to be sent
+     * @return json-object with the content
+     */
+    private JSONObject execute(Request request) throws Exception {
         if (request != null) {
 
-            Response httpResponse = null;
+            Response httpResponse;
             try {
-                httpResponse = client.newCall(request).execute();
-
-                response = new JSONObject(httpResponse.body().string());
-                response.put("statusCode", httpResponse.code());
-
-                httpResponse.body().close();
+                httpResponse = this.send(request);
             }
-            catch (Exception ex) {
-                try {
-                    httpResponse.body().close();
-                }
-                catch (Exception _ex) { /* NOTHING */ }
-
-                response = new JSONObject();
-                if (httpResponse != null)  {
-                    response.put("statusCode", httpResponse.code());
-                }
-                else response.put("statusCode", 522);
+            catch (IOException ex) {
+                return unavailable(ex);
             }
-            return response;
+
+            return parse(httpResponse);
         }
         else throw new Exception("THe request data appear to be null. ");
     }
 
+    /**
+     * Parse the response body, the status code is added to the response
+     * as statusCode. A body which is not a json-object gives only the statusCode.
+     *
+     * @param httpResponse the server response, closed after reading
+     * @return json-object with the content
+     */
+    private static JSONObject parse(Response httpResponse) {
+        JSONObject response;
+        try {
+            response = new JSONObject(httpResponse.body().string());
+        }
+        catch (Exception ex) {
+            response = new JSONObject();
+        }
+        finally {
+            httpResponse.close();
+        }
+
+        response.put("statusCode", httpResponse.code());
+        return response;
+    }
+
+    /**
+     * Response used when the server could not be reached, the
+     * message tells why.
+     */
+    private JSONObject unavailable(IOException ex) {
+        JSONObject response = new JSONObject();
+        response.put("statusCode", 522);
+        response.put("message", ex instanceof CircuitOpenException
+                ? ex.getMessage()
+                : String.format("Could not reach the server %s: %s", baseUrl, ex.getMessage()));
+        return response;
+    }
+
+    /**
+     * Request refused because the circuit breaker of the server is open.
+     */
+    private static class CircuitOpenException extends IOException {
+        CircuitOpenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Dispatcher of the shared clients, allowing many concurrent async
+     * calls to the same server (OkHttp allows only 5 per host by default).
+     */
+    private static Dispatcher asyncDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(256);
+        dispatcher.setMaxRequestsPerHost(64);
+        return dispatcher;
+    }
+
     /**
      * Join baseUrl with the pass given on arguments
      *
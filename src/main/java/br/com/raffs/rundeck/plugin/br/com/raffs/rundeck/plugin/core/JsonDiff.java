@@ -0,0 +1,456 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class JsonDiff {
+
+    // Annotation keeping the manifest of the last update, to find the fields removed from it.
+    public static final String LAST_APPLIED = "raffs.com.br/last-applied-configuration";
+
+    // Max length of the values printed on the changes.
+    private static final int MAX_VALUE_LENGTH = 60;
+
+    // Keys identifying the items of the lists merged by the strategic merge patch,
+    // the other lists are replaced as a whole.
+    private static final Map<String, String> MERGE_KEYS = new HashMap<String, String>();
+    static {
+        MERGE_KEYS.put("containers", "name");
+        MERGE_KEYS.put("initContainers", "name");
+        MERGE_KEYS.put("env", "name");
+        MERGE_KEYS.put("volumes", "name");
+        MERGE_KEYS.put("imagePullSecrets", "name");
+        MERGE_KEYS.put("volumeMounts", "mountPath");
+        MERGE_KEYS.put("ports", "containerPort");
+    }
+
+    // Fields accepted either as a number or a string (quantities and int-or-string),
+    // by their key or by the key of the object holding them.
+    private static final Set<String> INT_OR_STRING = new HashSet<String>(Arrays.asList(
+            "maxSurge", "maxUnavailable", "port", "targetPort"));
+    private static final Set<String> QUANTITIES = new HashSet<String>(Arrays.asList(
+            "limits", "requests"));
+
+    // Resource quantity, ex: 500m, 1.5, 1Gi, 12e6.
+    private static final Pattern QUANTITY = Pattern.compile(
+            "([+-]?(?:[0-9]+\\.?[0-9]*|\\.[0-9]+))([eE][+-]?[0-9]+|Ki|Mi|Gi|Ti|Pi|Ei|n|u|m|k|M|G|T|P|E)?");
+
+    // Multiplier of the binary (power of two) and decimal suffixes of the quantities.
+    private static final Map<String, BigDecimal> QUANTITY_SUFFIXES = new HashMap<String, BigDecimal>();
+    static {
+        String[] binary = { "Ki", "Mi", "Gi", "Ti", "Pi", "Ei" };
+        for (int i = 0; i < binary.length; i++) {
+            QUANTITY_SUFFIXES.put(binary[i], new BigDecimal(2).pow(10 * (i + 1)));
+        }
+
+        String[] decimal = { "n", "u", "m", "", "k", "M", "G", "T", "P", "E" };
+        for (int i = 0; i < decimal.length; i++) {
+            QUANTITY_SUFFIXES.put(decimal[i], BigDecimal.ONE.scaleByPowerOfTen(3 * (i - 3)));
+        }
+    }
+
+    /**
+     * Return the JSON merge patch (RFC 7386) changing the live object into
+     * the desired one. Only the fields defined on the desired object are
+     * compared, so the fields filled by the server are kept, and a list is
+     * sent as a whole when any of its items changed. The fields of the last
+     * applied manifest not found on the desired object are deleted (null).
+     *
+     * @param live the object read from the server
+     * @param desired the object to apply
+     * @param applied the manifest of the last update, or null when unknown
+     * @return the patch, empty when there's nothing to change
+     */
+    public static JSONObject mergePatch(JSONObject live, JSONObject desired, JSONObject applied) {
+        return diff(live, desired, applied, false, null);
+    }
+
+    /**
+     * Return the strategic merge patch changing the live object into the desired
+     * one. Same as mergePatch(), except the lists of containers, env, volumes,
+     * mounts and ports are merged by their key: only the changed items are sent,
+     * and the items removed from the desired object are deleted.
+     *
+     * @param live the object read from the server
+     * @param desired the object to apply
+     * @param applied the manifest of the last update, or null when unknown
+     * @return the patch, empty when there's nothing to change
+     */
+    public static JSONObject strategicMergePatch(JSONObject live, JSONObject desired, JSONObject applied) {
+        return diff(live, desired, applied, true, null);
+    }
+
+    /**
+     * Return the manifest of the last update, kept on the annotation of the object.
+     *
+     * @param live the object read from the server
+     * @return the manifest, or null when the object was not updated with it
+     */
+    public static JSONObject lastApplied(JSONObject live) {
+        JSONObject metadata = live.optJSONObject("metadata");
+        JSONObject annotations = metadata != null ? metadata.optJSONObject("annotations") : null;
+        if (annotations == null || ! annotations.has(LAST_APPLIED)) return null;
+
+        try {
+            return new JSONObject(annotations.getString(LAST_APPLIED));
+        }
+        catch (JSONException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Return a copy of the object to apply, with its manifest (without the
+     * metadata and the status) on the last applied annotation.
+     *
+     * @param desired the object to apply
+     * @return the object with the annotation
+     */
+    public static JSONObject withLastApplied(JSONObject desired) {
+        JSONObject copy = new JSONObject(desired.toString());
+
+        JSONObject manifest = new JSONObject(desired.toString());
+        manifest.remove("metadata");
+        manifest.remove("status");
+
+        if (! copy.has("metadata")) copy.put("metadata", new JSONObject());
+        JSONObject metadata = copy.getJSONObject("metadata");
+        if (! metadata.has("annotations")) metadata.put("annotations", new JSONObject());
+        metadata.getJSONObject("annotations").put(LAST_APPLIED, manifest.toString());
+
+        return copy;
+    }
+
+    /**
+     * Return true when every field of the desired value has the same value on
+     * the live one, the fields only found on the live value are ignored. The
+     * values of different types differ, except the numbers of the quantities
+     * and int-or-string fields given as strings.
+     *
+     * @param live the value read from the server
+     * @param desired the value to apply
+     * @return whether there's nothing to change
+     */
+    public static boolean contains(Object live, Object desired) {
+        return contains(live, desired, null, null, null);
+    }
+
+    /**
+     * Same as contains(), except the fields of the last applied manifest
+     * removed from the desired value must not be found on the live one.
+     */
+    private static boolean contains(Object live, Object desired, Object applied, String parent, String key) {
+        if (desired instanceof JSONObject) {
+            if (! (live instanceof JSONObject)) return false;
+
+            JSONObject liveObject = (JSONObject) live;
+            JSONObject desiredObject = (JSONObject) desired;
+            JSONObject appliedObject = applied instanceof JSONObject ? (JSONObject) applied : null;
+            for (String field : desiredObject.keySet()) {
+                Object desiredValue = desiredObject.get(field);
+
+                // the server does not keep the empty values.
+                if (! liveObject.has(field)) {
+                    if (isEmpty(desiredValue)) continue;
+                    return false;
+                }
+                Object appliedValue = appliedObject != null ? appliedObject.opt(field) : null;
+                if (! contains(liveObject.get(field), desiredValue, appliedValue, key, field)) return false;
+            }
+
+            return removed(liveObject, desiredObject, appliedObject).isEmpty();
+        }
+
+        if (desired instanceof JSONArray) {
+            if (! (live instanceof JSONArray)) return false;
+
+            JSONArray liveArray = (JSONArray) live;
+            JSONArray desiredArray = (JSONArray) desired;
+            if (liveArray.length() != desiredArray.length()) return false;
+
+            for (int i = 0; i < desiredArray.length(); i++) {
+                Object appliedItem = appliedItem(applied, desiredArray.get(i), i, MERGE_KEYS.get(key));
+                if (! contains(liveArray.get(i), desiredArray.get(i), appliedItem, parent, key)) return false;
+            }
+            return true;
+        }
+
+        // 1 and 1.0 are the same value, whatever the type parsed.
+        if (desired instanceof Number && live instanceof Number) {
+            return ((Number) desired).doubleValue() == ((Number) live).doubleValue();
+        }
+
+        // the server keeps the quantities on the canonical form, ex: 1000m as 1 and 1024Mi as 1Gi.
+        if (QUANTITIES.contains(parent)) {
+            BigDecimal desiredQuantity = quantity(desired);
+            BigDecimal liveQuantity = quantity(live);
+            if (desiredQuantity != null && liveQuantity != null) return desiredQuantity.compareTo(liveQuantity) == 0;
+        }
+
+        if ((desired instanceof Number && live instanceof String || desired instanceof String && live instanceof Number)
+                && INT_OR_STRING.contains(key)) {
+            return String.valueOf(desired).equals(String.valueOf(live));
+        }
+
+        return desired.equals(live);
+    }
+
+    /**
+     * Return the value of the resource quantity, or null when it's not a quantity.
+     */
+    static BigDecimal quantity(Object value) {
+        if (! (value instanceof String || value instanceof Number)) return null;
+
+        Matcher matcher = QUANTITY.matcher(String.valueOf(value).trim());
+        if (! matcher.matches()) return null;
+
+        BigDecimal number = new BigDecimal(matcher.group(1));
+        String suffix = matcher.group(2) != null ? matcher.group(2) : "";
+        if (suffix.startsWith("e") || (suffix.startsWith("E") && suffix.length() > 1)) {
+            return number.scaleByPowerOfTen(Integer.parseInt(suffix.substring(1).replace("+", "")));
+        }
+
+        return number.multiply(QUANTITY_SUFFIXES.get(suffix));
+    }
+
+    /**
+     * Describe the fields of the desired object which differ from the live
+     * object, one line per change, for example:
+     * spec.template.spec.containers[app].image: "app:1" -> "app:2"
+     *
+     * The items of the containers, env, volumes, mounts and ports lists are
+     * compared by their key, the other lists item by item when they have the
+     * same size, as a whole otherwise. The fields of the last applied manifest
+     * removed from the desired object are reported when still found on the
+     * live object.
+     *
+     * @param live the object read from the server
+     * @param desired the object to apply
+     * @param applied the manifest of the last update, or null when unknown
+     * @return the changes, empty when the live object already has all the desired fields
+     */
+    public static List<String> changes(JSONObject live, JSONObject desired, JSONObject applied) {
+        List<String> changes = new ArrayList<String>();
+        changes("", null, live, desired, applied, changes);
+        return changes;
+    }
+
+    /**
+     * Add the changes of the value on the path.
+     */
+    private static void changes(String path, String parent, Object live, Object desired, Object applied,
+                                List<String> changes) {
+        if (live == null) {
+            if (! isEmpty(desired)) changes.add(String.format("%s: added %s", path, summary(desired)));
+            return;
+        }
+
+        String key = path.replaceAll("^.*\\.|\\[.*$", "");
+        if (contains(live, desired, applied, parent, key)) return;
+
+        if (desired instanceof JSONObject && live instanceof JSONObject) {
+            JSONObject liveObject = (JSONObject) live;
+            JSONObject desiredObject = (JSONObject) desired;
+            JSONObject appliedObject = applied instanceof JSONObject ? (JSONObject) applied : null;
+            for (String field : desiredObject.keySet()) {
+                changes(path.isEmpty() ? field : path + "." + field, key, liveObject.opt(field),
+                        desiredObject.get(field), appliedObject != null ? appliedObject.opt(field) : null, changes);
+            }
+            for (String field : removed(liveObject, desiredObject, appliedObject)) {
+                changes.add(String.format("%s: removed", path.isEmpty() ? field : path + "." + field));
+            }
+            return;
+        }
+
+        String mergeKey = MERGE_KEYS.get(key);
+        if (mergeKey != null && desired instanceof JSONArray && live instanceof JSONArray
+                && isKeyed((JSONArray) desired, mergeKey) && isKeyed((JSONArray) live, mergeKey)) {
+
+            Map<String, Object> liveItems = new LinkedHashMap<String, Object>();
+            for (Object item : (JSONArray) live) liveItems.put(String.valueOf(((JSONObject) item).get(mergeKey)), item);
+
+            for (Object item : (JSONArray) desired) {
+                String name = String.valueOf(((JSONObject) item).get(mergeKey));
+                changes(String.format("%s[%s]", path, name), parent, liveItems.remove(name), item,
+                        appliedItem(applied, item, -1, mergeKey), changes);
+            }
+            for (String name : liveItems.keySet()) {
+                changes.add(String.format("%s[%s]: removed", path, name));
+            }
+            return;
+        }
+
+        // the lists with the same size are compared item by item.
+        if (desired instanceof JSONArray && live instanceof JSONArray
+                && ((JSONArray) desired).length() == ((JSONArray) live).length()) {
+            for (int i = 0; i < ((JSONArray) desired).length(); i++) {
+                Object item = ((JSONArray) desired).get(i);
+                changes(String.format("%s[%d]", path, i), parent, ((JSONArray) live).get(i), item,
+                        appliedItem(applied, item, i, null), changes);
+            }
+            return;
+        }
+
+        changes.add(String.format("%s: %s -> %s", path, summary(live), summary(desired)));
+    }
+
+    /**
+     * Return the value as json, shortened to be printed.
+     */
+    private static String summary(Object value) {
+        String text = value instanceof String ? JSONObject.quote((String) value) : String.valueOf(value);
+        return text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH - 3) + "..." : text;
+    }
+
+    /**
+     * Return true when the value is null, or an empty object or list.
+     */
+    private static boolean isEmpty(Object value) {
+        return value == null || JSONObject.NULL.equals(value)
+                || (value instanceof JSONObject && ((JSONObject) value).length() == 0)
+                || (value instanceof JSONArray && ((JSONArray) value).length() == 0);
+    }
+
+    /**
+     * Return the fields of the desired object which differ from the live object,
+     * and the fields of the last applied manifest removed from the desired object.
+     */
+    private static JSONObject diff(JSONObject live, JSONObject desired, JSONObject applied, boolean strategic,
+                                   String parent) {
+        JSONObject patch = new JSONObject();
+
+        for (String key : desired.keySet()) {
+            Object desiredValue = desired.get(key);
+            Object liveValue = live.opt(key);
+            Object appliedValue = applied != null ? applied.opt(key) : null;
+            if (liveValue != null && contains(liveValue, desiredValue, appliedValue, parent, key)) continue;
+
+            if (desiredValue instanceof JSONObject && liveValue instanceof JSONObject) {
+                patch.put(key, diff((JSONObject) liveValue, (JSONObject) desiredValue,
+                        appliedValue instanceof JSONObject ? (JSONObject) appliedValue : null, strategic, key));
+            }
+            else if (strategic && MERGE_KEYS.containsKey(key)
+                    && desiredValue instanceof JSONArray && liveValue instanceof JSONArray
+                    && isKeyed((JSONArray) desiredValue, MERGE_KEYS.get(key))
+                    && isKeyed((JSONArray) liveValue, MERGE_KEYS.get(key))) {
+                patch.put(key, diffList((JSONArray) liveValue, (JSONArray) desiredValue,
+                        appliedValue, key));
+            }
+            else {
+                patch.put(key, desiredValue);
+            }
+        }
+
+        // null deletes the field on both the merge patch and the strategic merge patch.
+        for (String key : removed(live, desired, applied)) patch.put(key, JSONObject.NULL);
+
+        return patch;
+    }
+
+    /**
+     * Return the items of the desired list which differ from the live list,
+     * and the delete directives of the live items not found on the desired list.
+     */
+    private static JSONArray diffList(JSONArray live, JSONArray desired, Object applied, String key) {
+        String mergeKey = MERGE_KEYS.get(key);
+        Map<String, JSONObject> liveItems = new HashMap<String, JSONObject>();
+        for (Object item : live) {
+            JSONObject object = (JSONObject) item;
+            liveItems.put(String.valueOf(object.get(mergeKey)), object);
+        }
+
+        JSONArray patch = new JSONArray();
+        for (Object item : desired) {
+            JSONObject desiredItem = (JSONObject) item;
+            JSONObject liveItem = liveItems.remove(String.valueOf(desiredItem.get(mergeKey)));
+            Object appliedItem = appliedItem(applied, desiredItem, -1, mergeKey);
+
+            if (liveItem == null) patch.put(desiredItem);
+            else if (! contains(liveItem, desiredItem, appliedItem, null, key)) {
+                patch.put(diff(liveItem, desiredItem, appliedItem instanceof JSONObject ? (JSONObject) appliedItem : null,
+                        true, key).put(mergeKey, desiredItem.get(mergeKey)));
+            }
+        }
+
+        for (JSONObject liveItem : liveItems.values()) {
+            patch.put(new JSONObject()
+                    .put(mergeKey, liveItem.get(mergeKey))
+                    .put("$patch", "delete"));
+        }
+
+        return patch;
+    }
+
+    /**
+     * Return the fields of the last applied manifest which were removed from
+     * the desired object and are still found on the live one.
+     */
+    private static List<String> removed(JSONObject live, JSONObject desired, JSONObject applied) {
+        List<String> removed = new ArrayList<String>();
+        if (applied == null) return removed;
+
+        for (String key : applied.keySet()) {
+            if (! desired.has(key) && live.has(key) && ! isEmpty(live.get(key))) removed.add(key);
+        }
+        return removed;
+    }
+
+    /**
+     * Return the item of the last applied list with the merge key of the desired item,
+     * or at the same index when the list has no merge key, or null.
+     */
+    private static Object appliedItem(Object applied, Object desiredItem, int index, String mergeKey) {
+        if (! (applied instanceof JSONArray)) return null;
+        if (mergeKey == null) return index >= 0 ? ((JSONArray) applied).opt(index) : null;
+        if (! (desiredItem instanceof JSONObject)) return null;
+
+        Object id = ((JSONObject) desiredItem).opt(mergeKey);
+        if (id == null) return null;
+
+        for (Object item : (JSONArray) applied) {
+            if (item instanceof JSONObject && String.valueOf(id).equals(String.valueOf(((JSONObject) item).opt(mergeKey))))
+                return item;
+        }
+        return null;
+    }
+
+    /**
+     * Return true when all the items of the list are objects with the merge key.
+     */
+    private static boolean isKeyed(JSONArray list, String mergeKey) {
+        for (Object item : list) {
+            if (! (item instanceof JSONObject) || ! ((JSONObject) item).has(mergeKey)) return false;
+        }
+        return true;
+    }
+}
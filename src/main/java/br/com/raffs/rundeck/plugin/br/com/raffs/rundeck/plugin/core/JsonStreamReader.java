@@ -0,0 +1,391 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+public class JsonStreamReader implements Closeable {
+
+    // Tokens of the json stream.
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    // Where the reader is on each nested object/array.
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    // Class attributes.
+    private final Reader reader;
+    private final char[] buffer = new char[4096];
+    private final StringBuilder text = new StringBuilder();
+    private int position;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int depth;
+    private Token peeked;
+
+    /**
+     * Class constructor.
+     *
+     * @param reader the json content, read only once and never buffered as a whole
+     */
+    public JsonStreamReader(Reader reader) {
+        this.reader = reader;
+        this.stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Return the type of the next token without consuming it.
+     *
+     * @return the next token
+     */
+    public Token peek() throws IOException {
+        if (peeked != null) return peeked;
+
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return peeked = peekValue();
+
+            case NONEMPTY_DOCUMENT:
+                if (nextNonWhitespace() != -1) throw syntaxError("Expected the end of the document");
+                return peeked = Token.END_DOCUMENT;
+
+            case EMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c != -1) position -= 1;
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                return peeked = peekValue();
+
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return peeked = Token.END_ARRAY;
+                if (c != ',') throw syntaxError("Expected ',' or ']'");
+                return peeked = peekValue();
+
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') return peeked = Token.END_OBJECT;
+                if (stack[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',') throw syntaxError("Expected ',' or '}'");
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw syntaxError("Expected a name");
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') throw syntaxError("Expected ':'");
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return peeked = peekValue();
+
+            default:
+                throw new IllegalStateException("Unknown json reader state");
+        }
+    }
+
+    /**
+     * Consume the beginning of an object.
+     */
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    /**
+     * Consume the end of an object.
+     */
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth -= 1;
+    }
+
+    /**
+     * Consume the beginning of an array.
+     */
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    /**
+     * Consume the end of an array.
+     */
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth -= 1;
+    }
+
+    /**
+     * Return whether the current object or array has another element.
+     */
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consume the next field name of the object.
+     *
+     * @return the field name
+     */
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        readQuoted(true);
+        return text.toString();
+    }
+
+    /**
+     * Consume the next scalar value as a string.
+     *
+     * @return the value, or null when it's a json null
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        peeked = null;
+
+        switch (token) {
+            case STRING:
+                readQuoted(true);
+                return text.toString();
+
+            case NUMBER:
+            case BOOLEAN:
+                readLiteral(true);
+                return text.toString();
+
+            case NULL:
+                readLiteral(false);
+                return null;
+
+            default:
+                throw syntaxError("Expected a scalar value but was " + token);
+        }
+    }
+
+    /**
+     * Consume the next value as a boolean.
+     */
+    public boolean nextBoolean() throws IOException {
+        return Boolean.parseBoolean(nextString());
+    }
+
+    /**
+     * Consume the next value as an integer, 0 when it's null.
+     */
+    public int nextInt() throws IOException {
+        String value = nextString();
+        if (value == null) return 0;
+
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException ex) {
+            throw syntaxError("Expected an integer but was " + value);
+        }
+    }
+
+    /**
+     * Consume the next value, including all the nested objects and arrays,
+     * without keeping its content.
+     */
+    public void skipValue() throws IOException {
+        int count = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    count += 1;
+                    break;
+
+                case BEGIN_ARRAY:
+                    beginArray();
+                    count += 1;
+                    break;
+
+                case END_OBJECT:
+                    endObject();
+                    count -= 1;
+                    break;
+
+                case END_ARRAY:
+                    endArray();
+                    count -= 1;
+                    break;
+
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    readQuoted(false);
+                    break;
+
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of the document");
+
+                default:
+                    peeked = null;
+                    readLiteral(false);
+            }
+        } while (count > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Resolve the token of the value starting on the next character.
+     */
+    private Token peekValue() throws IOException {
+        int c = nextNonWhitespace();
+        switch (c) {
+            case '{': return Token.BEGIN_OBJECT;
+            case '[': return Token.BEGIN_ARRAY;
+            case '"': return Token.STRING;
+            case 't':
+            case 'f': position -= 1; return Token.BOOLEAN;
+            case 'n': position -= 1; return Token.NULL;
+            case -1: throw syntaxError("Unexpected end of the document");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    position -= 1;
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Consume the peeked token, failing when it's not the expected one.
+     */
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) throw syntaxError("Expected " + expected + " but was " + token);
+        peeked = null;
+    }
+
+    /**
+     * Start a nested object or array.
+     */
+    private void push(int context) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = context;
+    }
+
+    /**
+     * Read the quoted string after the opening quote, keeping the
+     * unescaped content on the text buffer when asked.
+     */
+    private void readQuoted(boolean keep) throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) throw syntaxError("Unterminated string");
+            if (c == '"') return;
+
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'n': c = '\n'; break;
+                    case 'r': c = '\r'; break;
+                    case 't': c = '\t'; break;
+                    case 'u':
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(read(), 16);
+                            if (digit < 0) throw syntaxError("Invalid unicode escape");
+                            code = code * 16 + digit;
+                        }
+                        c = code;
+                        break;
+                    case -1: throw syntaxError("Unterminated string");
+                    default: break;
+                }
+            }
+
+            if (keep) text.append((char) c);
+        }
+    }
+
+    /**
+     * Read the unquoted value (number, true, false or null).
+     */
+    private void readLiteral(boolean keep) throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) return;
+            if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                position -= 1;
+                return;
+            }
+
+            if (keep) text.append((char) c);
+        }
+    }
+
+    /**
+     * Return the next character which is not a whitespace, or -1 at the end.
+     */
+    private int nextNonWhitespace() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n') return c;
+        }
+    }
+
+    /**
+     * Return the next character, or -1 at the end. The last character
+     * read can always be given back with position -= 1.
+     */
+    private int read() throws IOException {
+        if (position == limit) {
+            int count = reader.read(buffer, 0, buffer.length);
+            if (count <= 0) return -1;
+
+            position = 0;
+            limit = count;
+        }
+
+        return buffer[position++];
+    }
+
+    /**
+     * Build the syntax error exception.
+     */
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed json: " + message);
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ManifestCache {
+
+    // Version of the cached content, change it whenever the
+    // render/parse pipeline produces a different manifest.
+    private static final String FORMAT_VERSION = "2";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Rendered manifests shared between every execution on the JVM.
+    private static final LinkedHashMap<String, String> MEMORY =
+            new LinkedHashMap<String, String>(16, 0.75f, true);
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    // Class attributes.
+    private String cacheDir;
+    private int maxEntries;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public ManifestCache() {
+        this.cacheDir = "/var/tmp/ocdepl-cache/manifests";
+        this.maxEntries = 256;
+    }
+
+    /**
+     * Define the directory where the rendered manifests are persisted.
+     *
+     * @param cacheDir local directory of the manifests
+     * @return the instance of the manifest cache
+     */
+    public ManifestCache withCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    /**
+     * Define the max number of manifests kept on memory and on disk.
+     *
+     * @param maxEntries max number of manifests
+     * @return the instance of the manifest cache
+     */
+    public ManifestCache withMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        return this;
+    }
+
+    /**
+     * Responsible to create the cache directory.
+     *
+     * @return the instance of the manifest cache
+     */
+    public ManifestCache build() throws Exception {
+        File directory = new File(this.cacheDir);
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new Exception(
+                    String.format("Could not create the manifest cache directory: %s", this.cacheDir)
+            );
+
+        return this;
+    }
+
+    /**
+     * Compute the cache key from everything that changes the rendered manifest.
+     *
+     * @param templateId git blob id of the deployment template
+     * @param varsId git blob id of the vars file, or null when there's no vars file
+     * @param model the rundeck variables given to the template
+     * @return hex string of the key
+     */
+    public static String key(String templateId, String varsId, JSONObject model) throws Exception {
+        StringBuilder content = new StringBuilder()
+                .append(FORMAT_VERSION).append('\n')
+                .append(templateId).append('\n')
+                .append(varsId == null ? "" : varsId).append('\n');
+        canonical(model, content);
+
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(UTF8));
+        StringBuilder key = new StringBuilder();
+        for (byte b : hash) key.append(String.format("%02x", b));
+
+        return key.toString();
+    }
+
+    /**
+     * Return a copy of the cached manifest, looking first on memory
+     * then on the disk.
+     *
+     * @param key the key returned by key()
+     * @return the manifest or null when not cached
+     */
+    public JSONObject get(String key) {
+        String manifest;
+        synchronized (MEMORY) {
+            manifest = MEMORY.get(key);
+        }
+
+        if (manifest == null) {
+            File file = new File(this.cacheDir, key + ".json");
+            if (file.isFile()) {
+                try {
+                    manifest = new String(Files.readAllBytes(file.toPath()), UTF8);
+                    file.setLastModified(System.currentTimeMillis());
+                    remember(key, manifest);
+                }
+                catch (Exception ex) {
+                    manifest = null;
+                }
+            }
+        }
+
+        if (manifest == null) {
+            MISSES.incrementAndGet();
+            return null;
+        }
+
+        HITS.incrementAndGet();
+        return new JSONObject(manifest);
+    }
+
+    /**
+     * Store the manifest on memory and on the disk.
+     *
+     * @param key the key returned by key()
+     * @param manifest the parsed deployment configuration
+     */
+    public void put(String key, JSONObject manifest) {
+        String content = manifest.toString();
+        remember(key, content);
+
+        try {
+            File temp = File.createTempFile("manifest-", ".tmp", new File(this.cacheDir));
+            temp.setReadable(false, false);
+            temp.setReadable(true, true);
+            Files.write(temp.toPath(), content.getBytes(UTF8));
+            Files.move(temp.toPath(), new File(this.cacheDir, key + ".json").toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (Exception ex) {
+            System.out.println("Could not persist the rendered manifest: " + ex.getMessage());
+        }
+
+        evict();
+    }
+
+    /**
+     * Return the number of lookups found on the cache.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Return the number of lookups not found on the cache.
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * Keep the manifest on the memory cache, removing the least recently used.
+     */
+    private void remember(String key, String manifest) {
+        synchronized (MEMORY) {
+            MEMORY.put(key, manifest);
+
+            Iterator<String> keys = MEMORY.keySet().iterator();
+            while (MEMORY.size() > this.maxEntries && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove the least recently used manifests from the disk.
+     */
+    private void evict() {
+        File[] files = new File(this.cacheDir).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".json");
+            }
+        });
+        if (files == null || files.length <= this.maxEntries) return;
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return Long.compare(left.lastModified(), right.lastModified());
+            }
+        });
+
+        for (int i = 0; i < files.length - this.maxEntries; i++) files[i].delete();
+    }
+
+    /**
+     * Write the json value with the object keys sorted, so the same
+     * content always produces the same key.
+     */
+    private static void canonical(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            List<String> keys = new ArrayList<String>(object.keySet());
+            Collections.sort(keys);
+
+            out.append('{');
+            for (String key : keys) {
+                out.append(JSONObject.quote(key)).append(':');
+                canonical(object.get(key), out);
+                out.append(',');
+            }
+            out.append('}');
+        }
+        else if (value instanceof JSONArray) {
+            out.append('[');
+            for (Object item : (JSONArray) value) {
+                canonical(item, out);
+                out.append(',');
+            }
+            out.append(']');
+        }
+        else if (value instanceof Map) {
+            canonical(new JSONObject((Map) value), out);
+        }
+        else if (value instanceof Collection) {
+            canonical(new JSONArray((Collection) value), out);
+        }
+        else {
+            out.append(JSONObject.valueToString(value));
+        }
+    }
+}
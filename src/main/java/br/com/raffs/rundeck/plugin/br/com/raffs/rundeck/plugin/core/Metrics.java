@@ -0,0 +1,339 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class Metrics implements DynamicMBean {
+
+    // Names of the metrics.
+    public static final String PHASE_DURATION = "ocdepl_phase_duration_seconds";
+    public static final String HTTP_DURATION = "ocdepl_http_request_duration_seconds";
+    public static final String HTTP_REQUESTS = "ocdepl_http_requests_total";
+    public static final String ROLLOUTS = "ocdepl_rollouts_total";
+
+    // Upper bounds (in seconds) of the histogram buckets, from the http calls to the rollouts.
+    private static final double[] BUCKETS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600
+    };
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Name of the MBean.
+    private static final String OBJECT_NAME = "br.com.raffs.rundeck.plugin:type=OpenshiftDeployment";
+
+    // Metrics shared by every execution on the JVM.
+    private static final Metrics REGISTRY = new Metrics();
+
+    // Help text of the metrics.
+    private static final Map<String, String> HELP = new TreeMap<String, String>();
+    static {
+        HELP.put(PHASE_DURATION, "Time spent on each phase of the deployment step");
+        HELP.put(HTTP_DURATION, "Time until the Openshift server answers, by operation");
+        HELP.put(HTTP_REQUESTS, "Requests sent to the Openshift server, by operation and status code");
+        HELP.put(ROLLOUTS, "Rollouts finished, by status");
+
+        REGISTRY.register();
+    }
+
+    // Class attributes, the series sorted by name and labels.
+    private final Map<String, Series> series = new TreeMap<String, Series>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Return the metrics shared by every execution on the JVM.
+     */
+    public static Metrics registry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Format the labels of a series, ex: labels("phase", "git_sync").
+     *
+     * @param pairs label names and values
+     * @return the labels on the Prometheus format
+     */
+    public static String labels(String... pairs) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (labels.length() > 0) labels.append(',');
+            labels.append(pairs[i]).append("=\"")
+                    .append(pairs[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+
+        return labels.toString();
+    }
+
+    /**
+     * Add a sample to the histogram.
+     *
+     * @param name name of the metric
+     * @param labels labels of the series, given by labels()
+     * @param seconds the sample
+     */
+    public void observe(String name, String labels, double seconds) {
+        Series target = series(name, labels, true);
+        synchronized (target) {
+            for (int i = 0; i < BUCKETS.length; i++) {
+                if (seconds <= BUCKETS[i]) target.buckets[i] += 1;
+            }
+            target.count += 1;
+            target.sum += seconds;
+        }
+    }
+
+    /**
+     * Increment the counter.
+     *
+     * @param name name of the metric
+     * @param labels labels of the series, given by labels()
+     */
+    public void increment(String name, String labels) {
+        Series target = series(name, labels, false);
+        synchronized (target) {
+            target.count += 1;
+        }
+    }
+
+    /**
+     * Return the metrics on the Prometheus text format.
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        String current = null;
+
+        for (Series item : snapshot()) {
+            if (! item.name.equals(current)) {
+                current = item.name;
+                text.append(String.format("# HELP %s %s\n", item.name, HELP.containsKey(item.name) ? HELP.get(item.name) : item.name));
+                text.append(String.format("# TYPE %s %s\n", item.name, item.histogram ? "histogram" : "counter"));
+            }
+
+            String separator = item.labels.isEmpty() ? "" : ",";
+            if (item.histogram) {
+                for (int i = 0; i < BUCKETS.length; i++) {
+                    text.append(String.format(Locale.ROOT, "%s_bucket{%s%sle=\"%s\"} %d\n",
+                            item.name, item.labels, separator, bound(BUCKETS[i]), item.buckets[i]));
+                }
+                text.append(String.format("%s_bucket{%s%sle=\"+Inf\"} %d\n", item.name, item.labels, separator, item.count));
+                text.append(String.format(Locale.ROOT, "%s_sum{%s} %.6f\n", item.name, item.labels, item.sum));
+                text.append(String.format("%s_count{%s} %d\n", item.name, item.labels, item.count));
+            }
+            else text.append(String.format("%s{%s} %d\n", item.name, item.labels, item.count));
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Write the metrics on the file read by the node exporter textfile collector,
+     * replacing it at once so the collector never reads a partial file.
+     *
+     * @param path path of the .prom file
+     */
+    public void writeTextfile(String path) throws Exception {
+        File file = new File(path);
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new Exception(
+                    String.format("Could not create the metrics directory: %s", directory)
+            );
+
+        File temp = File.createTempFile(".ocdepl-", ".prom.tmp", directory);
+        try {
+            Files.write(temp.toPath(), toPrometheus().getBytes(UTF8));
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Return the series, creating it on the first sample.
+     */
+    private Series series(String name, String labels, boolean histogram) {
+        String key = name + "{" + labels + "}";
+        synchronized (series) {
+            Series target = series.get(key);
+            if (target == null) {
+                target = new Series(name, labels, histogram);
+                series.put(key, target);
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Return a copy of every series.
+     */
+    private List<Series> snapshot() {
+        List<Series> copies = new ArrayList<Series>();
+        synchronized (series) {
+            for (Series item : series.values()) {
+                synchronized (item) {
+                    copies.add(item.copy());
+                }
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * Format the bucket bound, ex: 0.005 or 10.
+     */
+    private static String bound(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    /**
+     * Register the metrics on the platform MBean server, replacing the
+     * ones registered by a previous load of the plugin.
+     */
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            }
+            catch (InstanceAlreadyExistsException ex) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        }
+        catch (Exception ex) {
+            System.out.println("Could not register the deployment metrics on JMX: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Name of the JMX attribute, ex: ocdepl_phase_duration_seconds.git_sync.count
+     */
+    private static String attributeName(Series item, String suffix) {
+        StringBuilder name = new StringBuilder(item.name);
+        for (String pair : item.labels.isEmpty() ? new String[0] : item.labels.split("\",")) {
+            name.append('.').append(pair.substring(pair.indexOf('=') + 2).replace("\"", ""));
+        }
+        return name.append('.').append(suffix).toString();
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (Series item : snapshot()) {
+            if (attribute.equals(attributeName(item, "count"))) return item.count;
+            if (item.histogram && attribute.equals(attributeName(item, "sum"))) return item.sum;
+        }
+
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            }
+            catch (AttributeNotFoundException ex) {
+                // the attribute is not returned.
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("The deployment metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (Series item : snapshot()) {
+            attributes.add(new MBeanAttributeInfo(attributeName(item, "count"), "java.lang.Long",
+                    HELP.get(item.name), true, false, false));
+            if (item.histogram) {
+                attributes.add(new MBeanAttributeInfo(attributeName(item, "sum"), "java.lang.Double",
+                        HELP.get(item.name) + " (sum in seconds)", true, false, false));
+            }
+        }
+
+        return new MBeanInfo(getClass().getName(), "Openshift deployment step metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+
+    /**
+     * Values of a metric with a set of labels.
+     */
+    private static class Series {
+        final String name;
+        final String labels;
+        final boolean histogram;
+        final long[] buckets;
+        long count;
+        double sum;
+
+        Series(String name, String labels, boolean histogram) {
+            this.name = name;
+            this.labels = labels;
+            this.histogram = histogram;
+            this.buckets = new long[histogram ? BUCKETS.length : 0];
+        }
+
+        Series copy() {
+            Series copy = new Series(name, labels, histogram);
+            System.arraycopy(buckets, 0, copy.buckets, 0, buckets.length);
+            copy.count = count;
+            copy.sum = sum;
+            return copy;
+        }
+    }
+}
@@ -17,9 +17,15 @@
 
 package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
 
+import okhttp3.Call;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.Reader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
 public class OpenshiftClient {
 
     // Class attributes
@@ -31,6 +37,15 @@ public class OpenshiftClient {
     private String username;
     private String password;
     private int timeout;
+    private int poolMaxIdle;
+    private int poolKeepAlive;
+    private ReadinessMode readinessMode;
+    private UpdateStrategy updateStrategy;
+    private RetryPolicy retryPolicy;
+    private boolean gzipRequests;
+    private TraceLog traceLog;
+    private int breakerThreshold;
+    private long breakerCooldown;
 
     private HTTPClient client;
 
@@ -39,6 +54,13 @@ public class OpenshiftClient {
      */
     public OpenshiftClient() {
         this.timeout = 30;
+        this.poolMaxIdle = 5;
+        this.poolKeepAlive = 300;
+        this.readinessMode = ReadinessMode.PODS;
+        this.updateStrategy = UpdateStrategy.STRATEGIC_MERGE_PATCH;
+        this.retryPolicy = new RetryPolicy();
+        this.breakerThreshold = 5;
+        this.breakerCooldown = 30;
     }
 
     /**
@@ -56,52 +78,97 @@ public class OpenshiftClient {
                     )
             );
 
-        // define the authorization.
-        String authorization = null;
-        if (this.username != null && this.password != null)
-            authorization = Utils.getToken(
-                this.serverUrl, this.username, this.password, this.timeout
-            );
-        else authorization = "Bearer " + this.token;
-
         this.client = new HTTPClient()
                 .withTimeout(this.timeout)
                 .withBaseUrl(this.serverUrl)
-                .withAuthorization(authorization)
+                .withConnectionPool(this.poolMaxIdle, this.poolKeepAlive)
+                .withRetryPolicy(this.retryPolicy)
+                .withGzipRequests(this.gzipRequests)
+                .withTraceLog(this.traceLog)
+                .withCircuitBreaker(this.breakerThreshold, this.breakerCooldown)
                 .build();
 
+        // define the authorization.
+        String authorization = null;
+        if (this.username != null && this.password != null) {
+            authorization = Utils.getToken(this.client, this.username, this.password);
+            if (authorization == null)
+                throw new Exception(
+                        String.format("Could not authenticate the user '%s' on %s", username, serverUrl)
+                );
+
+            // a rejected token is removed from the cache and requested once again.
+            this.client.withAuthorizationProvider(new HTTPClient.AuthorizationProvider() {
+                @Override
+                public String refresh(String rejected) {
+                    Utils.invalidateToken(serverUrl, username, password, rejected);
+                    return Utils.getToken(client, username, password);
+                }
+            });
+        }
+        else authorization = "Bearer " + this.token;
+
+        this.client.withAuthorization(authorization);
+
         return this;
     }
 
+    /**
+     * Return a client for another service of the same project, sharing
+     * the connection and the authorization of this client.
+     *
+     * @param service openshift service
+     * @return the client of the service
+     */
+    public OpenshiftClient forService(String service) throws Exception {
+        requireClient();
+
+        OpenshiftClient other = new OpenshiftClient();
+        other.serverUrl = this.serverUrl;
+        other.apiVersion = this.apiVersion;
+        other.project = this.project;
+        other.service = service;
+        other.token = this.token;
+        other.username = this.username;
+        other.password = this.password;
+        other.timeout = this.timeout;
+        other.poolMaxIdle = this.poolMaxIdle;
+        other.poolKeepAlive = this.poolKeepAlive;
+        other.readinessMode = this.readinessMode;
+        other.updateStrategy = this.updateStrategy;
+        other.retryPolicy = this.retryPolicy;
+        other.gzipRequests = this.gzipRequests;
+        other.traceLog = this.traceLog;
+        other.breakerThreshold = this.breakerThreshold;
+        other.breakerCooldown = this.breakerCooldown;
+        other.client = this.client;
+
+        return other;
+    }
+
     /**
      * Send a GET Request to validate the servers connections
      *
      * @return
      */
     public int getServerStatus() throws Exception {
-        int statusCode;
-
-        if (client != null) {
-
-            JSONObject response = client.get(
-                    this.joinPath("/oapi", "/"));
-
-            if (response != null) {
-                statusCode = response.getInt("statusCode");
-            }
-            else
-                throw new Exception(
-                        "Error on trying to connect with: " +
-                                this.joinPath("/oapi", "")
-                );
-        }
-        else
-            throw new Exception(
-                    "Could not find valid open connection on " +
-                            "to httpclient inside the Openshift Client class"
-            );
+        return serverStatus(requireClient().get(this.joinPath("/oapi", "/")));
+    }
 
-        return statusCode;
+    /**
+     * Asynchronous version of getServerStatus().
+     *
+     * @return future completed with the status code
+     */
+    public CompletableFuture<Integer> getServerStatusAsync() throws Exception {
+        return requireClient().getAsync(this.joinPath("/oapi", "/")).thenApply(
+                checked(new ResponseCheck<Integer>() {
+                    @Override
+                    public Integer apply(JSONObject response) throws Exception {
+                        return serverStatus(response);
+                    }
+                })
+        );
     }
 
     /**
@@ -110,26 +177,24 @@ public class OpenshiftClient {
      * @return
      */
     public boolean checkProject(String project) throws Exception {
-        if (client != null) {
-            String path = this.joinPath("/oapi", "/projects/" + project);
-            JSONObject response = client.get(path);
+        return projectExists(requireClient().get(projectPath(project)), project);
+    }
 
-            int status;
-            if ((status = response.getInt("statusCode")) != 200) {
-                throw new Exception(
-                     String.format(
-                            "Receive error '%d' on try to validate whether the project '%s' exists: "
-                                    + "openshift message => %s",
-                            status, project, response.getString("message")
-                     )
-                );
-            }
-            else return true;
-        }
-        else
-            throw new Exception(
-                "Could not find any instance of http client please usage build syntax"
-            );
+    /**
+     * Asynchronous version of checkProject().
+     *
+     * @param project
+     * @return future completed with true, or with the error when the project could not be validated
+     */
+    public CompletableFuture<Boolean> checkProjectAsync(final String project) throws Exception {
+        return requireClient().getAsync(projectPath(project)).thenApply(
+                checked(new ResponseCheck<Boolean>() {
+                    @Override
+                    public Boolean apply(JSONObject response) throws Exception {
+                        return projectExists(response, project);
+                    }
+                })
+        );
     }
 
     /**
@@ -140,25 +205,24 @@ public class OpenshiftClient {
      * @return
      */
     public boolean checkService(String service) throws Exception {
-        String path = this.joinPath("/oapi",
-                String.format(
-                        "/namespaces/%s/deploymentconfigs/%s",
-                        project, service
-                )
-        );
+        return serviceExists(client.get(deploymentConfigPath(service)), service);
+    }
 
-        JSONObject response = client.get(path);
-        int status;
-        if ((status = response.getInt("statusCode")) != 200) {
-            throw new Exception(
-                    String.format(
-                            "Receive error '%d' on try to validate whether the service %s/%s exists: "
-                                    + "openshift message => %s",
-                            status, project, service, response.getString("message")
-                    )
-            );
-        }
-        else return true;
+    /**
+     * Asynchronous version of checkService().
+     *
+     * @param service
+     * @return future completed with true, or with the error when the service could not be validated
+     */
+    public CompletableFuture<Boolean> checkServiceAsync(final String service) throws Exception {
+        return client.getAsync(deploymentConfigPath(service)).thenApply(
+                checked(new ResponseCheck<Boolean>() {
+                    @Override
+                    public Boolean apply(JSONObject response) throws Exception {
+                        return serviceExists(response, service);
+                    }
+                })
+        );
     }
 
     /**
@@ -168,28 +232,19 @@ public class OpenshiftClient {
      * @throws Exception
      */
     public JSONObject getDeploymentConfig() throws Exception {
-        JSONObject response = null;
-        String path = this.joinPath("/oapi",
-                String.format(
-                        "/namespaces/%s/deploymentconfigs/%s",
-                        project, service
-                )
-        );
-
-        response = client.get(path);
-
-        int status;
-        if ((status = response.getInt("statusCode")) != 200) {
-            throw new Exception(
-                    String.format(
-                            "Receive error '%d' on try get a Deployment Configuration on %s/%s: "
-                                    + "openshift message => %s",
-                            status, project, service, response.getString("message")
-                    )
-            );
-        }
+        return validate(client.get(deploymentConfigPath(service)),
+                "Receive error '%d' on try get a Deployment Configuration on %s/%s: ");
+    }
 
-        return response;
+    /**
+     * Asynchronous version of getDeploymentConfig().
+     *
+     * @return future completed with the Deployment Configuration
+     */
+    public CompletableFuture<JSONObject> getDeploymentConfigAsync() throws Exception {
+        return client.getAsync(deploymentConfigPath(service)).thenApply(
+                validated("Receive error '%d' on try get a Deployment Configuration on %s/%s: ")
+        );
     }
 
     /**
@@ -200,27 +255,121 @@ public class OpenshiftClient {
      * @return
      */
     public JSONObject setDeploymentConfig(JSONObject deployConfig) throws Exception {
-        JSONObject response;
-        String path = this.joinPath("/oapi",
-                String.format(
-                        "/namespaces/%s/deploymentconfigs/%s",
-                        project, service
-                )
+        return validate(client.put(deploymentConfigPath(service), deployConfig),
+                "Receive error '%d' on try to update a Deployment Configuration on %s/%s: ");
+    }
+
+    /**
+     * Asynchronous version of setDeploymentConfig().
+     *
+     * @param deployConfig
+     * @return future completed with the updated Deployment Configuration
+     */
+    public CompletableFuture<JSONObject> setDeploymentConfigAsync(JSONObject deployConfig) throws Exception {
+        return client.putAsync(deploymentConfigPath(service), deployConfig).thenApply(
+                validated("Receive error '%d' on try to update a Deployment Configuration on %s/%s: ")
         );
-        response = client.put(path, deployConfig);
+    }
 
-        int status;
-        if ((status = response.getInt("statusCode")) != 200) {
-            throw new Exception(
-                    String.format(
-                            "Receive error '%d' on try to update a Deployment Configuration on %s/%s: "
-                                    + "openshift message => %s",
-                            status, project, service, response.getString("message")
-                    )
-            );
+    /**
+     * Update the live Deployment Configuration to the desired one, using the
+     * update strategy: the whole object is sent with PUT, otherwise only the
+     * fields that differ from the live object are sent with PATCH.
+     *
+     * When another writer changed the object meanwhile (409 Conflict), the
+     * object is read again and the update applied on the new resourceVersion,
+     * keeping the same increment of the latestVersion.
+     *
+     * @param live the Deployment Configuration read from the server
+     * @param desired the Deployment Configuration to apply
+     * @return the updated Deployment Configuration
+     */
+    public JSONObject updateDeploymentConfig(JSONObject live, JSONObject desired) throws Exception {
+        JSONObject response = sendUpdate(live, desired);
+
+        for (int attempt = 1; response.getInt("statusCode") == 409 && attempt < retryPolicy.getMaxAttempts(); attempt++) {
+            JSONObject current = getDeploymentConfig();
+
+            JSONObject status = desired.optJSONObject("status");
+            if (status != null && status.has("latestVersion")) {
+                int increment = status.getInt("latestVersion") - live.getJSONObject("status").getInt("latestVersion");
+                status.put("latestVersion", current.getJSONObject("status").getInt("latestVersion") + increment);
+            }
+            desired.put("metadata", current.getJSONObject("metadata"));
+
+            live = current;
+            response = sendUpdate(live, desired);
         }
 
-        return response;
+        return validate(response, "Receive error '%d' on try to update a Deployment Configuration on %s/%s: ");
+    }
+
+    /**
+     * Send the update of the Deployment Configuration using the update strategy,
+     * keeping the manifest on the last applied annotation. The patches delete the
+     * fields removed since the last update, so the whole object is sent with PUT
+     * while the live object has no last applied annotation.
+     */
+    private JSONObject sendUpdate(JSONObject live, JSONObject desired) throws Exception {
+        JSONObject applied = JsonDiff.lastApplied(live);
+        JSONObject update = JsonDiff.withLastApplied(desired);
+
+        switch (applied == null ? UpdateStrategy.PUT : updateStrategy) {
+            case MERGE_PATCH:
+                return client.patch(deploymentConfigPath(service),
+                        JsonDiff.mergePatch(live, update, applied), HTTPClient.MERGE_PATCH);
+
+            case STRATEGIC_MERGE_PATCH:
+                return client.patch(deploymentConfigPath(service),
+                        JsonDiff.strategicMergePatch(live, update, applied), HTTPClient.STRATEGIC_MERGE_PATCH);
+
+            default:
+                return client.put(deploymentConfigPath(service), update);
+        }
+    }
+
+    /**
+     * Start a new deployment of the service through the instantiate
+     * subresource, without changing the Deployment Configuration.
+     *
+     * @param latest whether to update the images from the image change triggers first
+     * @param force whether to deploy even when the configuration has not changed
+     * @return the Deployment Configuration with the new latestVersion
+     */
+    public JSONObject instantiate(boolean latest, boolean force) throws Exception {
+        return validate(client.post(deploymentConfigPath(service) + "/instantiate", deploymentRequest(latest, force)),
+                "Receive error '%d' on try to instantiate a Deployment Configuration on %s/%s: ");
+    }
+
+    /**
+     * Start the deployment after the update of the Deployment Configuration, unless
+     * the update response shows it was already started by a ConfigChange trigger.
+     * Without force the server decides whether the template changed, so it neither
+     * starts a second rollout after the trigger fired nor a rollout of an unchanged
+     * template. Only an unchanged configuration is forced, to deploy it again.
+     *
+     * @param updated the Deployment Configuration returned by the update
+     * @param latestVersion the deployment version before the update
+     * @param changed whether the update changed the configuration
+     * @return the Deployment Configuration with the latestVersion to wait for
+     */
+    public JSONObject triggerDeployment(JSONObject updated, int latestVersion, boolean changed) throws Exception {
+        JSONObject status = updated.optJSONObject("status");
+        if (status != null && status.optInt("latestVersion", latestVersion) > latestVersion) return updated;
+
+        return instantiate(true, ! changed);
+    }
+
+    /**
+     * Asynchronous version of instantiate().
+     *
+     * @param latest whether to update the images from the image change triggers first
+     * @param force whether to deploy even when the configuration has not changed
+     * @return future completed with the Deployment Configuration with the new latestVersion
+     */
+    public CompletableFuture<JSONObject> instantiateAsync(boolean latest, boolean force) throws Exception {
+        return client.postAsync(deploymentConfigPath(service) + "/instantiate", deploymentRequest(latest, force))
+                .thenApply(validated("Receive error '%d' on try to instantiate a Deployment Configuration on %s/%s: "));
     }
 
     /**
@@ -231,24 +380,20 @@ public class OpenshiftClient {
      * @return
      */
     public JSONObject createDeploymentConfig(JSONObject deployConfig) throws Exception {
-        JSONObject response;
-        String path = this.joinPath("/oapi",
-            String.format("/namespaces/%s/deploymentconfigs", project)
-        );
-        response = client.post(path, deployConfig);
-
-        int status;
-        if ((status = response.getInt("statusCode")) != 200) {
-            throw new Exception(
-                  String.format(
-                     "Receive error '%d' on try to create a new Deployment Configuration on %s/%s: "
-                             + "openshift message => %s",
-                         status, project, service, response.getString("message")
-                     )
-                );
-        }
+        return validate(client.post(deploymentConfigsPath(), deployConfig),
+                "Receive error '%d' on try to create a new Deployment Configuration on %s/%s: ");
+    }
 
-        return response;
+    /**
+     * Asynchronous version of createDeploymentConfig().
+     *
+     * @param deployConfig
+     * @return future completed with the created Deployment Configuration
+     */
+    public CompletableFuture<JSONObject> createDeploymentConfigAsync(JSONObject deployConfig) throws Exception {
+        return client.postAsync(deploymentConfigsPath(), deployConfig).thenApply(
+                validated("Receive error '%d' on try to create a new Deployment Configuration on %s/%s: ")
+        );
     }
 
     /**
@@ -259,54 +404,143 @@ public class OpenshiftClient {
      * @return
      */
     public boolean notReady() throws Exception {
-        // Define the replicas updates.
-        int readyReplicas = 0;
-        int pendingReplicas = 0;
-        int failedReplicas = 0;
+        if (readinessMode == ReadinessMode.PODS) return podsNotReady(0);
 
-        // Validate the deployment configs updates pods.
-        JSONObject response = getDeploymentConfig();
-        JSONObject podList = getPodStatus(response);
+        int latestVersion = getDeploymentConfig().getJSONObject("status").getInt("latestVersion");
+        return notReady(latestVersion);
+    }
 
-        // go each pods and validate the status.
-        if (podList.has("items")) {
-            for (Object pods : podList.getJSONArray("items")) {
-                JSONObject pod = (JSONObject) pods;
+    /**
+     * Validate whether the given deployment version is finished, using
+     * the configured readiness mode. On the replication-controller and
+     * deployment-config modes a single request is sent, whatever the number of pods.
+     *
+     * @param latestVersion the deployment version triggered
+     * @return
+     */
+    public boolean notReady(int latestVersion) throws Exception {
+        switch (readinessMode) {
+            case REPLICATION_CONTROLLER:
+                return replicationControllerNotReady(latestVersion);
 
-                if (pod.has("status")) {
-                    String podStatus = pod.getJSONObject("status").getString("phase");
+            case DEPLOYMENT_CONFIG:
+                return deploymentConfigNotReady(latestVersion);
 
-                    if (podStatus.equals("Pending"))
-                        pendingReplicas += 1;
+            default:
+                return podsNotReady(latestVersion);
+        }
+    }
 
-                    else if (podStatus.equals("Running")) {
-                        if (pod.getJSONObject("status").has("conditions")) {
-                            JSONArray objects = pod.getJSONObject("status").getJSONArray("conditions");
+    /**
+     * Validate the deployment from the ReplicationController of the version,
+     * finished when the deployer has completed and all the replicas are ready.
+     *
+     * @param latestVersion the deployment version triggered
+     * @return
+     */
+    private boolean replicationControllerNotReady(int latestVersion) throws Exception {
+        String path = String.format("/api/v1/namespaces/%s/replicationcontrollers/%s-%d",
+                project, service, latestVersion);
+        JSONObject response = client.get(path);
 
-                            // Go through each conditional to find the ready status.
-                            for (Object object : objects) {
-                                JSONObject condition = (JSONObject) object;
+        int status = response.getInt("statusCode");
+        if (status == 404) return true;     // not created by the deployer yet.
+        if (status != 200) {
+            throw new Exception(
+                    String.format(
+                            "Receive error '%d' on try get the Replication Controller %s-%d: "
+                                    + "openshift message => %s",
+                            status, service, latestVersion, response.optString("message")
+                    )
+            );
+        }
 
-                                if (condition.getString("type").equals("Ready")
-                                        && condition.getString("status").equals("True")) {
+        String phase = "";
+        JSONObject annotations = response.getJSONObject("metadata").optJSONObject("annotations");
+        if (annotations != null) phase = annotations.optString("openshift.io/deployment.phase");
 
-                                    readyReplicas += 1;
-                                }
-                            }
-                        }
-                    }
+        if (phase.equals("Failed"))
+            throw new Exception(
+                    String.format("Deployment #%d has failed on %s/%s", latestVersion, project, service)
+            );
 
-                    else if (podStatus.equals("Failed"))
-                        failedReplicas += 1;
-                }
+        int replicas = response.getJSONObject("spec").optInt("replicas", 0);
+        int readyReplicas = response.getJSONObject("status").optInt("readyReplicas", 0);
+
+        return ! (phase.equals("Complete") && readyReplicas >= replicas);
+    }
+
+    /**
+     * Validate the deployment from the Deployment Configuration status,
+     * finished when the version is observed, every replica is updated and
+     * available, and no replica of the previous version is left.
+     *
+     * @param latestVersion the deployment version triggered
+     * @return
+     */
+    private boolean deploymentConfigNotReady(int latestVersion) throws Exception {
+        JSONObject response = getDeploymentConfig();
+        JSONObject metadata = response.getJSONObject("metadata");
+        JSONObject status = response.getJSONObject("status");
+
+        if (status.optInt("latestVersion", 0) < latestVersion) return true;
+        if (status.optLong("observedGeneration", 0) < metadata.optLong("generation", 0)) return true;
+
+        // the Progressing condition tells about the rollout of the latest version.
+        JSONArray conditions = status.optJSONArray("conditions");
+        if (conditions != null) {
+            for (Object object : conditions) {
+                JSONObject condition = (JSONObject) object;
+                if (! condition.optString("type").equals("Progressing")) continue;
+
+                String reason = condition.optString("reason");
+                if (reason.equals("ProgressDeadlineExceeded") || reason.equals("RolloutCancelled"))
+                    throw new Exception(
+                            String.format("Deployment #%d has failed on %s/%s: %s",
+                                    latestVersion, project, service, condition.optString("message"))
+                    );
             }
         }
-        else throw new Exception("Could not find any running/pending pods to validate !!!");
+
+        int replicas = response.getJSONObject("spec").optInt("replicas", 0);
+        return ! (status.optInt("updatedReplicas", 0) >= replicas
+                && status.optInt("availableReplicas", 0) >= replicas
+                && status.optInt("unavailableReplicas", 0) == 0
+                && status.optInt("replicas", 0) == replicas);
+    }
+
+    /**
+     * Validate the deployment counting the ready pods of the latest version.
+     *
+     * @param expectedVersion the deployment version triggered, not ready while not started
+     * @return
+     */
+    private boolean podsNotReady(int expectedVersion) throws Exception {
+        JSONObject response = getDeploymentConfig();
+        int version = response.getJSONObject("status").getInt("latestVersion");
+        if (version < expectedVersion) return true;
+
+        String path = String.format("/api/v1/namespaces/%s/pods?labelSelector=deployment=%s-%d",
+                project, service, version);
+
+        // Stream the pod list, keeping only the replicas counts.
+        int[] replicas = client.get(path, new HTTPClient.BodyReader<int[]>() {
+            @Override
+            public int[] read(int statusCode, Reader body) throws Exception {
+                if (statusCode != 200)
+                    throw new Exception(
+                            String.format("Receive error '%d' on try to list the pods of %s/%s",
+                                    statusCode, project, service)
+                    );
+
+                return PodListReader.countReplicas(body);
+            }
+        });
 
         // throwing error on failed replicas.
-        if (failedReplicas > 0)
+        if (replicas[2] > 0)
              throw new Exception(
-                 String.format("[%d] replicas has failed deployment", failedReplicas)
+                 String.format("[%d] replicas has failed deployment", replicas[2])
              );
 
         // Change the deploy cycle when observed when it's finished.
@@ -316,7 +550,7 @@ public class OpenshiftClient {
         }
 
         // define whether there's the same numbers of running and updated replicas.
-        return ! (pendingReplicas == 0 && readyReplicas == updatesReplicas);
+        return ! (replicas[1] == 0 && replicas[0] == updatesReplicas);
     }
 
     /**
@@ -358,6 +592,221 @@ public class OpenshiftClient {
         return returnResponse;
     }
 
+    /**
+     * Asynchronous version of getPodStatus().
+     *
+     * @param deployConfig
+     * @return future completed with the pod list
+     */
+    public CompletableFuture<JSONObject> getPodStatusAsync(JSONObject deployConfig) throws Exception {
+        if (! deployConfig.has("metadata") || ! deployConfig.has("status"))
+            throw new Exception("Could not find metadata/status on deployment config json-schema");
+
+        String path = String.format("/api/v1/namespaces/%s/pods?labelSelector=deployment=%s-%d",
+                deployConfig.getJSONObject("metadata").getString("namespace"),
+                deployConfig.getJSONObject("metadata").getString("name"),
+                deployConfig.getJSONObject("status").getInt("latestVersion"));
+
+        return client.getAsync(path);
+    }
+
+    /**
+     * Watch the pods of the deployment given by the Deployment Configuration,
+     * streaming the changes after the resourceVersion.
+     *
+     * @param deployConfig deployment configuration with the latestVersion
+     * @param resourceVersion version of the pod list to start from
+     * @param handler receiver of the events
+     * @return the watch call, used to cancel it
+     * @throws Exception
+     */
+    public Call watchPods(JSONObject deployConfig, String resourceVersion,
+                          HTTPClient.WatchHandler handler) throws Exception {
+        int version = deployConfig.getJSONObject("status").getInt("latestVersion");
+
+        String path = String.format(
+                "/api/v1/namespaces/%s/pods?labelSelector=deployment=%s-%d&watch=true&resourceVersion=%s",
+                project, service, version, resourceVersion);
+
+        return client.watch(path, handler);
+    }
+
+    /**
+     * Watch the Deployment Configuration, streaming the changes after the resourceVersion.
+     *
+     * @param resourceVersion version of the deployment configuration to start from
+     * @param handler receiver of the events
+     * @return the watch call, used to cancel it
+     * @throws Exception
+     */
+    public Call watchDeploymentConfig(String resourceVersion, HTTPClient.WatchHandler handler) throws Exception {
+        String path = this.joinPath("/oapi",
+                String.format(
+                        "/namespaces/%s/deploymentconfigs?fieldSelector=metadata.name%%3D%s&watch=true&resourceVersion=%s",
+                        project, service, resourceVersion
+                )
+        );
+
+        return client.watch(path, handler);
+    }
+
+    /**
+     * Return the status code of the server status response.
+     */
+    private int serverStatus(JSONObject response) throws Exception {
+        if (response == null)
+            throw new Exception(
+                    "Error on trying to connect with: " +
+                            this.joinPath("/oapi", "")
+            );
+
+        return response.getInt("statusCode");
+    }
+
+    /**
+     * Validate the project response.
+     */
+    private boolean projectExists(JSONObject response, String project) throws Exception {
+        int status;
+        if ((status = response.getInt("statusCode")) != 200) {
+            throw new Exception(
+                 String.format(
+                        "Receive error '%d' on try to validate whether the project '%s' exists: "
+                                + "openshift message => %s",
+                        status, project, response.optString("message")
+                 )
+            );
+        }
+        else return true;
+    }
+
+    /**
+     * Validate the service response.
+     */
+    private boolean serviceExists(JSONObject response, String service) throws Exception {
+        int status;
+        if ((status = response.getInt("statusCode")) != 200) {
+            throw new Exception(
+                    String.format(
+                            "Receive error '%d' on try to validate whether the service %s/%s exists: "
+                                    + "openshift message => %s",
+                            status, project, service, response.optString("message")
+                    )
+            );
+        }
+        else return true;
+    }
+
+    /**
+     * Validate the Deployment Configuration response.
+     *
+     * @param response the server response
+     * @param error message format of the error, given the status, project and service
+     * @return the response when it's successful
+     */
+    private JSONObject validate(JSONObject response, String error) throws Exception {
+        int status;
+        if ((status = response.getInt("statusCode")) != 200 && status != 201) {
+            throw new Exception(
+                    String.format(
+                            error + "openshift message => %s",
+                            status, project, service, response.optString("message")
+                    )
+            );
+        }
+
+        return response;
+    }
+
+    /**
+     * Body of the instantiate request.
+     */
+    private JSONObject deploymentRequest(boolean latest, boolean force) {
+        return new JSONObject()
+                .put("kind", "DeploymentRequest")
+                .put("apiVersion", apiVersion != null ? apiVersion : "v1")
+                .put("name", service)
+                .put("latest", latest)
+                .put("force", force);
+    }
+
+    /**
+     * Asynchronous version of validate().
+     */
+    private Function<JSONObject, JSONObject> validated(final String error) {
+        return checked(new ResponseCheck<JSONObject>() {
+            @Override
+            public JSONObject apply(JSONObject response) throws Exception {
+                return validate(response, error);
+            }
+        });
+    }
+
+    /**
+     * Return the http client, failing when build() was not called.
+     */
+    private HTTPClient requireClient() throws Exception {
+        if (client == null)
+            throw new Exception(
+                    "Could not find valid open connection on " +
+                            "to httpclient inside the Openshift Client class"
+            );
+
+        return client;
+    }
+
+    /**
+     * Path of the project.
+     */
+    private String projectPath(String project) {
+        return this.joinPath("/oapi", "/projects/" + project);
+    }
+
+    /**
+     * Path of the Deployment Configurations of the project.
+     */
+    private String deploymentConfigsPath() {
+        return this.joinPath("/oapi", String.format("/namespaces/%s/deploymentconfigs", project));
+    }
+
+    /**
+     * Path of the Deployment Configuration of the service.
+     */
+    private String deploymentConfigPath(String service) {
+        return this.joinPath("/oapi",
+                String.format(
+                        "/namespaces/%s/deploymentconfigs/%s",
+                        project, service
+                )
+        );
+    }
+
+    /**
+     * Check of a response, which could fail with a checked exception.
+     */
+    private interface ResponseCheck<T> {
+        T apply(JSONObject response) throws Exception;
+    }
+
+    /**
+     * Adapt the check to the futures, failing them with the check exception.
+     */
+    private static <T> Function<JSONObject, T> checked(final ResponseCheck<T> check) {
+        return new Function<JSONObject, T>() {
+            @Override
+            public T apply(JSONObject response) {
+                try {
+                    return check.apply(response);
+                }
+                catch (RuntimeException ex) {
+                    throw ex;
+                }
+                catch (Exception ex) {
+                    throw new CompletionException(ex);
+                }
+            }
+        };
+    }
 
     /**
      * Define the timeout connection on the Openshift API console.
@@ -370,6 +819,103 @@ public class OpenshiftClient {
         return this;
     }
 
+    /**
+     * Define how the deployment readiness is evaluated.
+     *
+     * @param readinessMode
+     * @return
+     */
+    public OpenshiftClient withReadinessMode(ReadinessMode readinessMode) {
+        this.readinessMode = readinessMode;
+        return this;
+    }
+
+    /**
+     * Define how the Deployment Configuration is sent to the server.
+     *
+     * @param updateStrategy
+     * @return
+     */
+    public OpenshiftClient withUpdateStrategy(UpdateStrategy updateStrategy) {
+        this.updateStrategy = updateStrategy;
+        return this;
+    }
+
+    /**
+     * Define how the requests failed by transient errors are sent again,
+     * also used to reconnect the dropped watches.
+     *
+     * @param retryPolicy
+     * @return
+     */
+    public OpenshiftClient withRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Define the circuit breaker shared by the clients of the same server.
+     *
+     * @param threshold number of consecutive failures opening the breaker, 0 disables it
+     * @param cooldown time in seconds the requests are refused once it opens
+     * @return
+     */
+    public OpenshiftClient withCircuitBreaker(int threshold, long cooldown) {
+        this.breakerThreshold = threshold;
+        this.breakerCooldown = cooldown;
+        return this;
+    }
+
+    /**
+     * Return the retry policy of the requests.
+     */
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Define whether to compress the request bodies with gzip.
+     *
+     * @param gzipRequests
+     * @return
+     */
+    public OpenshiftClient withGzipRequests(boolean gzipRequests) {
+        this.gzipRequests = gzipRequests;
+        return this;
+    }
+
+    /**
+     * Define the trace log of the requests, null to not trace them.
+     *
+     * @param traceLog
+     * @return
+     */
+    public OpenshiftClient withTraceLog(TraceLog traceLog) {
+        this.traceLog = traceLog;
+        return this;
+    }
+
+    /**
+     * Return the bytes transferred by this client and the clients of
+     * the other services sharing its connection.
+     */
+    public TransferStats getTransferStats() throws Exception {
+        return requireClient().getTransferStats();
+    }
+
+    /**
+     * Define the connection pool shared by the clients of the same server.
+     *
+     * @param maxIdle max number of idle connections
+     * @param keepAlive time in seconds an idle connection is kept open
+     * @return
+     */
+    public OpenshiftClient withConnectionPool(int maxIdle, int keepAlive) {
+        this.poolMaxIdle = maxIdle;
+        this.poolKeepAlive = keepAlive;
+        return this;
+    }
+
     /**
      * Define the Openshift Console Management.
      *
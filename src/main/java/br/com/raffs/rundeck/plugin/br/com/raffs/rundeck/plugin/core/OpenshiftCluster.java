@@ -0,0 +1,209 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class OpenshiftCluster {
+
+    // Class attributes.
+    private String name;
+    private String serverUrl;
+    private String apiVersion;
+    private String token;
+    private String username;
+    private String password;
+    private int timeout;
+    private int deploymentTimeout;
+    private int wave;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public OpenshiftCluster() {
+        this.timeout = 30;
+        this.deploymentTimeout = 600;
+        this.wave = 1;
+    }
+
+    /**
+     * Parse the clusters from the json list, for example:
+     * [{"name": "canary", "url": "https://c1:8443", "token": "...", "wave": 1},
+     *  {"name": "eu", "url": "https://c2:8443", "username": "u", "password": "p", "wave": 2}]
+     *
+     * The fields not defined (url, apiversion, token, username, password, timeout,
+     * deployment-timeout) are taken from the default cluster.
+     *
+     * @param spec json list of clusters
+     * @param defaults cluster with the default values
+     * @return the clusters on the same order
+     */
+    public static List<OpenshiftCluster> parse(String spec, OpenshiftCluster defaults) throws Exception {
+        JSONArray list;
+        try {
+            list = new JSONArray(spec.trim());
+        }
+        catch (JSONException ex) {
+            throw new Exception("Could not parse the Openshift clusters, expecting a json list: " + ex.getMessage());
+        }
+
+        List<OpenshiftCluster> clusters = new ArrayList<OpenshiftCluster>();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < list.length(); i++) {
+            JSONObject entry = list.optJSONObject(i);
+            if (entry == null)
+                throw new Exception(String.format("The Openshift cluster #%d is not a json object", i + 1));
+
+            String url = entry.optString("url", defaults.serverUrl);
+            if (url != null) url = url.replaceAll("/+$", "");
+            OpenshiftCluster cluster = new OpenshiftCluster()
+                    .withName(entry.optString("name", url))
+                    .withServerUrl(url)
+                    .withApiVersion(entry.optString("apiversion", defaults.apiVersion))
+                    .withTimeout(entry.optInt("timeout", defaults.timeout))
+                    .withDeploymentTimeout(entry.optInt("deployment-timeout", defaults.deploymentTimeout))
+                    .withWave(entry.optInt("wave", 1));
+
+            // the credentials are inherited only when the cluster does not define any.
+            if (entry.has("token") || entry.has("username")) {
+                cluster.withToken(entry.optString("token", null))
+                        .withUsername(entry.optString("username", null))
+                        .withPassword(entry.optString("password", null));
+            }
+            else {
+                cluster.withToken(defaults.token)
+                        .withUsername(defaults.username)
+                        .withPassword(defaults.password);
+            }
+
+            if (cluster.serverUrl == null || cluster.serverUrl.isEmpty())
+                throw new Exception(String.format("Could not find the url of the Openshift cluster '%s'", cluster.name));
+
+            if (names.contains(cluster.name))
+                throw new Exception(String.format("The Openshift cluster '%s' is defined twice", cluster.name));
+
+            names.add(cluster.name);
+            clusters.add(cluster);
+        }
+
+        if (clusters.isEmpty())
+            throw new Exception("Could not find any Openshift cluster on the list");
+
+        return clusters;
+    }
+
+    /**
+     * Return a client connected to the cluster.
+     *
+     * @param project openshift project
+     * @param service openshift service
+     * @return the client not built yet, so more options could be given
+     */
+    public OpenshiftClient newClient(String project, String service) {
+        return new OpenshiftClient()
+                .withProject(project)
+                .withService(service)
+                .withServerUrl(serverUrl)
+                .withApiVersion(apiVersion)
+                .withTimeout(timeout)
+                .withToken(token)
+                .withUsername(username)
+                .withPassword(password);
+    }
+
+    public OpenshiftCluster withName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public OpenshiftCluster withServerUrl(String serverUrl) {
+        this.serverUrl = serverUrl;
+        return this;
+    }
+
+    public OpenshiftCluster withApiVersion(String apiVersion) {
+        this.apiVersion = apiVersion;
+        return this;
+    }
+
+    public OpenshiftCluster withToken(String token) {
+        this.token = token;
+        return this;
+    }
+
+    public OpenshiftCluster withUsername(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public OpenshiftCluster withPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * Define the network timeout (in seconds) of the requests to the cluster.
+     */
+    public OpenshiftCluster withTimeout(int timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Define the max time (in seconds) waiting the rollout on the cluster.
+     */
+    public OpenshiftCluster withDeploymentTimeout(int deploymentTimeout) {
+        this.deploymentTimeout = deploymentTimeout;
+        return this;
+    }
+
+    /**
+     * Define the wave of the cluster, the clusters of a wave are deployed
+     * at the same time after all the clusters of the previous waves.
+     */
+    public OpenshiftCluster withWave(int wave) {
+        this.wave = wave;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getDeploymentTimeout() {
+        return deploymentTimeout;
+    }
+
+    public int getWave() {
+        return wave;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PhaseTimer {
+
+    // Class attributes, the time intervals (start and stop, in nanoseconds) of each phase.
+    private final Map<String, List<long[]>> phases = new LinkedHashMap<String, List<long[]>>();
+
+    /**
+     * Return the start time of a phase, given to stop().
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time spent on the phase since the start, on the step
+     * and on the shared metrics. The metrics observe the time of every
+     * service, while the step keeps the interval to report the wall-clock time.
+     *
+     * @param phase name of the phase, ex: git_sync
+     * @param startedAt the value returned by start()
+     */
+    public void stop(String phase, long startedAt) {
+        long stoppedAt = System.nanoTime();
+        Metrics.registry().observe(Metrics.PHASE_DURATION, Metrics.labels("phase", phase), (stoppedAt - startedAt) / 1e9);
+
+        synchronized (phases) {
+            List<long[]> intervals = phases.get(phase);
+            if (intervals == null) {
+                intervals = new ArrayList<long[]>();
+                phases.put(phase, intervals);
+            }
+            intervals.add(new long[] { startedAt, stoppedAt });
+        }
+    }
+
+    /**
+     * Return the wall-clock time (in milliseconds) of each phase, in the order
+     * they first ran. The phases run by many services at the same time are
+     * counted once, as the time at least one service was on it.
+     */
+    public Map<String, Long> getPhases() {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        synchronized (phases) {
+            for (Map.Entry<String, List<long[]>> phase : phases.entrySet()) {
+                result.put(phase.getKey(), wallClock(phase.getValue()) / 1000000);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Return the time (in nanoseconds) covered by the intervals, merging the overlapping ones.
+     */
+    static long wallClock(List<long[]> intervals) {
+        List<long[]> sorted = new ArrayList<long[]>(intervals);
+        Collections.sort(sorted, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+
+        long total = 0, start = 0, stop = 0;
+        boolean open = false;
+        for (long[] interval : sorted) {
+            if (open && interval[0] <= stop) {
+                stop = Math.max(stop, interval[1]);
+                continue;
+            }
+
+            if (open) total += stop - start;
+            start = interval[0];
+            stop = interval[1];
+            open = true;
+        }
+        if (open) total += stop - start;
+
+        return total;
+    }
+}
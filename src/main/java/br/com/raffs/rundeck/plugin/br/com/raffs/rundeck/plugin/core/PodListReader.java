@@ -0,0 +1,255 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+public class PodListReader implements Closeable {
+
+    // Class attributes.
+    private final JsonStreamReader json;
+    private String resourceVersion;
+    private boolean hasItems;
+    private boolean inItems;
+    private boolean finished;
+
+    /**
+     * Class constructor, the pods are read one by one from the
+     * response body, only the phase, conditions and container states
+     * are kept, all the other fields are skipped.
+     *
+     * @param reader body of the pod list response
+     */
+    public PodListReader(Reader reader) throws IOException {
+        this.json = new JsonStreamReader(reader);
+        this.json.beginObject();
+    }
+
+    /**
+     * Count the replicas of the pod list by state.
+     *
+     * @param reader body of the pod list response
+     * @return the ready, pending and failed replicas
+     */
+    public static int[] countReplicas(Reader reader) throws Exception {
+        int[] counts = new int[3];
+        PodListReader pods = new PodListReader(reader);
+        while (pods.hasNext()) {
+            PodStatus pod = pods.next();
+            String phase = pod.getPhase() == null ? "" : pod.getPhase();
+
+            if (phase.equals("Pending")) counts[1] += 1;
+            else if (phase.equals("Running") && pod.isReady()) counts[0] += 1;
+            else if (phase.equals("Failed")) counts[2] += 1;
+        }
+
+        if (! pods.hasItems())
+            throw new Exception("Could not find any running/pending pods to validate !!!");
+
+        return counts;
+    }
+
+    /**
+     * Return whether there's another pod on the list.
+     */
+    public boolean hasNext() throws IOException {
+        if (finished) return false;
+        if (inItems && json.hasNext()) return true;
+
+        if (inItems) {
+            json.endArray();
+            inItems = false;
+        }
+
+        // look for the items, reading the list metadata on the way.
+        while (json.hasNext()) {
+            String name = json.nextName();
+
+            if (name.equals("items") && json.peek() == JsonStreamReader.Token.BEGIN_ARRAY) {
+                json.beginArray();
+                hasItems = true;
+                inItems = true;
+                if (json.hasNext()) return true;
+
+                json.endArray();
+                inItems = false;
+            }
+            else if (name.equals("metadata") && json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                readListMetadata();
+            }
+            else json.skipValue();
+        }
+
+        json.endObject();
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Read the next pod of the list.
+     *
+     * @return the pod status
+     */
+    public PodStatus next() throws IOException {
+        if (! hasNext()) throw new IllegalStateException("There's no more pods on the list");
+
+        String name = null;
+        String phase = null;
+        boolean ready = false;
+        String waitingReason = null;
+        int restartCount = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+
+            if (field.equals("metadata") && json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    if (json.nextName().equals("name")) name = json.nextString();
+                    else json.skipValue();
+                }
+                json.endObject();
+            }
+            else if (field.equals("status") && json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String key = json.nextName();
+                    JsonStreamReader.Token token = json.peek();
+
+                    if (key.equals("phase")) phase = json.nextString();
+                    else if (key.equals("conditions") && token == JsonStreamReader.Token.BEGIN_ARRAY) {
+                        ready = readReadyCondition();
+                    }
+                    else if (key.equals("containerStatuses") && token == JsonStreamReader.Token.BEGIN_ARRAY) {
+                        json.beginArray();
+                        while (json.hasNext()) {
+                            String[] reason = new String[1];
+                            restartCount += readContainerStatus(reason);
+                            if (waitingReason == null) waitingReason = reason[0];
+                        }
+                        json.endArray();
+                    }
+                    else json.skipValue();
+                }
+                json.endObject();
+            }
+            else json.skipValue();
+        }
+        json.endObject();
+
+        return new PodStatus(name, phase, ready, waitingReason, restartCount);
+    }
+
+    /**
+     * Return whether the response had the items field, only
+     * known after reading all the pods.
+     */
+    public boolean hasItems() {
+        return hasItems;
+    }
+
+    /**
+     * Return the resourceVersion of the list, only known after
+     * reading all the pods.
+     */
+    public String getResourceVersion() {
+        return resourceVersion;
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+    }
+
+    /**
+     * Read the metadata of the list.
+     */
+    private void readListMetadata() throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("resourceVersion")) resourceVersion = json.nextString();
+            else json.skipValue();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Read the pod conditions, returning whether the Ready condition is True.
+     */
+    private boolean readReadyCondition() throws IOException {
+        boolean ready = false;
+
+        json.beginArray();
+        while (json.hasNext()) {
+            String type = null;
+            String status = null;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                String key = json.nextName();
+                if (key.equals("type")) type = json.nextString();
+                else if (key.equals("status")) status = json.nextString();
+                else json.skipValue();
+            }
+            json.endObject();
+
+            if ("Ready".equals(type) && "True".equals(status)) ready = true;
+        }
+        json.endArray();
+
+        return ready;
+    }
+
+    /**
+     * Read the container status, returning its restart count and
+     * keeping the waiting reason on the given array.
+     */
+    private int readContainerStatus(String[] waitingReason) throws IOException {
+        int restartCount = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = json.nextName();
+
+            if (key.equals("restartCount")) restartCount = json.nextInt();
+            else if (key.equals("state") && json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String state = json.nextName();
+                    if (state.equals("waiting") && json.peek() == JsonStreamReader.Token.BEGIN_OBJECT) {
+                        json.beginObject();
+                        while (json.hasNext()) {
+                            if (json.nextName().equals("reason")) waitingReason[0] = json.nextString();
+                            else json.skipValue();
+                        }
+                        json.endObject();
+                    }
+                    else json.skipValue();
+                }
+                json.endObject();
+            }
+            else json.skipValue();
+        }
+        json.endObject();
+
+        return restartCount;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+public class PodStatus {
+
+    // Class attributes.
+    private final String name;
+    private final String phase;
+    private final boolean ready;
+    private final String waitingReason;
+    private final int restartCount;
+
+    /**
+     * Class constructor.
+     *
+     * @param name pod name
+     * @param phase pod phase (Pending, Running, Succeeded, Failed or Unknown)
+     * @param ready whether the Ready condition is True
+     * @param waitingReason reason of the first waiting container (ex: CrashLoopBackOff), or null
+     * @param restartCount sum of the restarts of the containers
+     */
+    PodStatus(String name, String phase, boolean ready, String waitingReason, int restartCount) {
+        this.name = name;
+        this.phase = phase;
+        this.ready = ready;
+        this.waitingReason = waitingReason;
+        this.restartCount = restartCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public String getWaitingReason() {
+        return waitingReason;
+    }
+
+    public int getRestartCount() {
+        return restartCount;
+    }
+}
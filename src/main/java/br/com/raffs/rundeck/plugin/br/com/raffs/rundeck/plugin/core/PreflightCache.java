@@ -0,0 +1,91 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class PreflightCache {
+
+    // Time (in milliseconds) until the server/project validation
+    // expires, shared between every execution on the JVM.
+    private static final ConcurrentMap<String, Long> VALID_UNTIL =
+            new ConcurrentHashMap<String, Long>();
+
+    // Class attributes.
+    private int ttl;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public PreflightCache() {
+        this.ttl = 60;
+    }
+
+    /**
+     * Define for how long a successful validation is reused.
+     *
+     * @param ttl time in seconds, 0 disables the cache
+     * @return the instance of the preflight cache
+     */
+    public PreflightCache withTtl(int ttl) {
+        this.ttl = Math.max(0, ttl);
+        return this;
+    }
+
+    /**
+     * Return whether the server was reachable and the project was found
+     * less than ttl seconds ago.
+     *
+     * @param server openshift server url
+     * @param project openshift project
+     * @return true when the checks can be skipped
+     */
+    public boolean isValid(String server, String project) {
+        Long validUntil = VALID_UNTIL.get(key(server, project));
+        return validUntil != null && System.currentTimeMillis() < validUntil;
+    }
+
+    /**
+     * Keep the successful validation of the server and project.
+     *
+     * @param server openshift server url
+     * @param project openshift project
+     */
+    public void put(String server, String project) {
+        if (ttl > 0) VALID_UNTIL.put(key(server, project), System.currentTimeMillis() + ttl * 1000L);
+    }
+
+    /**
+     * Forget the validation, normally because a request to the server failed.
+     *
+     * @param server openshift server url
+     * @param project openshift project
+     */
+    public static void invalidate(String server, String project) {
+        VALID_UNTIL.remove(key(server, project));
+    }
+
+    /**
+     * Define the cache key.
+     */
+    private static String key(String server, String project) {
+        return String.format("%s|%s", server, project);
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+public enum ReadinessMode {
+
+    // Count the ready pods of the deployment (Deployment Configuration + pod list).
+    PODS("pods"),
+
+    // Read the phase and ready replicas of the deployment ReplicationController.
+    REPLICATION_CONTROLLER("replication-controller"),
+
+    // Read the replicas counts and conditions of the Deployment Configuration.
+    DEPLOYMENT_CONFIG("deployment-config");
+
+    private final String name;
+
+    ReadinessMode(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Return the readiness mode of the configuration value.
+     *
+     * @param name pods, replication-controller or deployment-config
+     * @return the readiness mode
+     * @throws Exception when the name is unknown
+     */
+    public static ReadinessMode fromString(String name) throws Exception {
+        if (name == null) return PODS;
+
+        for (ReadinessMode mode : values()) {
+            if (mode.name.equalsIgnoreCase(name.trim())) return mode;
+        }
+
+        throw new Exception(String.format("Unknown readiness mode: %s", name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
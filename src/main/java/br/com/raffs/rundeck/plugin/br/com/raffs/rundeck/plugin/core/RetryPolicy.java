@@ -0,0 +1,132 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class RetryPolicy {
+
+    // Max time (in milliseconds) waited for a Retry-After given by the server.
+    private static final long MAX_RETRY_AFTER = 60000;
+
+    // Class attributes.
+    private int maxAttempts;
+    private long initialDelay;
+    private long maxDelay;
+    private double jitter;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public RetryPolicy() {
+        this.maxAttempts = 3;
+        this.initialDelay = 500;
+        this.maxDelay = 10000;
+        this.jitter = 0.2;
+    }
+
+    /**
+     * Define how many times a request is sent, including the first one.
+     *
+     * @param maxAttempts number of attempts, 1 disables the retries
+     * @return the instance of the retry policy
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    /**
+     * Define the delay before the first retry, doubled on each retry.
+     *
+     * @param initialDelay delay in milliseconds
+     * @return the instance of the retry policy
+     */
+    public RetryPolicy withInitialDelay(long initialDelay) {
+        this.initialDelay = Math.max(0, initialDelay);
+        return this;
+    }
+
+    /**
+     * Define the max delay between two attempts.
+     *
+     * @param maxDelay delay in milliseconds
+     * @return the instance of the retry policy
+     */
+    public RetryPolicy withMaxDelay(long maxDelay) {
+        this.maxDelay = Math.max(1, maxDelay);
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Return true when the response could be a transient failure and the
+     * request is safe to be sent again. The throttled (429) and unavailable (503)
+     * requests are rejected before being processed, so any method is retried,
+     * the gateway and server errors only for the GET requests.
+     *
+     * @param method http method of the request
+     * @param statusCode status code of the response
+     * @return whether to send the request again
+     */
+    public boolean isRetryable(String method, int statusCode) {
+        if (statusCode == 429 || statusCode == 503) return true;
+
+        return method.equals("GET")
+                && (statusCode == 500 || statusCode == 502 || statusCode == 504);
+    }
+
+    /**
+     * Return true when the request failed with a transient connection error
+     * and is safe to be sent again: any GET, and the requests that could not
+     * even connect to the server.
+     *
+     * @param method http method of the request
+     * @param ex the connection error
+     * @return whether to send the request again
+     */
+    public boolean isRetryable(String method, IOException ex) {
+        return method.equals("GET") || ex instanceof ConnectException;
+    }
+
+    /**
+     * Return the time to wait before the next attempt, the Retry-After of the
+     * server when given in seconds, exponential backoff with jitter otherwise.
+     *
+     * @param attempt number of attempts already done, starting from 1
+     * @param retryAfter value of the Retry-After header, or null
+     * @return delay in milliseconds
+     */
+    public long nextDelay(int attempt, String retryAfter) {
+        if (retryAfter != null && retryAfter.trim().matches("[0-9]+")) {
+            return Math.min(MAX_RETRY_AFTER, Long.parseLong(retryAfter.trim()) * 1000);
+        }
+
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(2, Math.max(0, attempt - 1)));
+
+        // spread the delay on [delay * (1 - jitter), delay * (1 + jitter)].
+        double factor = 1.0 - jitter + ThreadLocalRandom.current().nextDouble() * 2 * jitter;
+        return Math.round(delay * factor);
+    }
+}
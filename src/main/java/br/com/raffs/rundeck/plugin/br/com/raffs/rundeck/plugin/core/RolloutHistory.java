@@ -0,0 +1,165 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RolloutHistory {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Serialize the changes of the history files on the JVM.
+    private static final Object LOCK = new Object();
+
+    // Class attributes.
+    private String cacheDir;
+    private int maxSamples;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    public RolloutHistory() {
+        this.cacheDir = "/var/tmp/ocdepl-cache/history";
+        this.maxSamples = 10;
+    }
+
+    /**
+     * Define the directory where the rollout durations are persisted.
+     *
+     * @param cacheDir local directory of the history
+     * @return the instance of the rollout history
+     */
+    public RolloutHistory withCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    /**
+     * Define the number of rollout durations kept for each service.
+     *
+     * @param maxSamples number of durations
+     * @return the instance of the rollout history
+     */
+    public RolloutHistory withMaxSamples(int maxSamples) {
+        this.maxSamples = Math.max(1, maxSamples);
+        return this;
+    }
+
+    /**
+     * Responsible to create the history directory.
+     *
+     * @return the instance of the rollout history
+     */
+    public RolloutHistory build() throws Exception {
+        File directory = new File(this.cacheDir);
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new Exception(
+                    String.format("Could not create the rollout history directory: %s", this.cacheDir)
+            );
+
+        return this;
+    }
+
+    /**
+     * Compute the history key of the service.
+     *
+     * @param server openshift server url
+     * @param project openshift project
+     * @param service openshift service
+     * @return hex string of the key
+     */
+    public static String key(String server, String project, String service) throws Exception {
+        byte[] hash = MessageDigest.getInstance("SHA-1").digest(
+                String.format("%s|%s|%s", server, project, service).getBytes(UTF8));
+
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 10; i++) key.append(String.format("%02x", hash[i]));
+
+        return key.toString();
+    }
+
+    /**
+     * Return the shortest of the last rollout durations of the service.
+     *
+     * @param key the key returned by key()
+     * @return duration in milliseconds, or -1 when there's no history
+     */
+    public long fastest(String key) {
+        long fastest = -1;
+        for (long duration : read(key)) {
+            if (fastest < 0 || duration < fastest) fastest = duration;
+        }
+
+        return fastest;
+    }
+
+    /**
+     * Add the rollout duration on the service history, keeping only
+     * the last samples.
+     *
+     * @param key the key returned by key()
+     * @param duration rollout duration in milliseconds
+     */
+    public void record(String key, long duration) {
+        synchronized (LOCK) {
+            List<Long> durations = read(key);
+            durations.add(duration);
+            while (durations.size() > this.maxSamples) durations.remove(0);
+
+            StringBuilder content = new StringBuilder();
+            for (long value : durations) content.append(value).append('\n');
+
+            try {
+                File temp = File.createTempFile("history-", ".tmp", new File(this.cacheDir));
+                Files.write(temp.toPath(), content.toString().getBytes(UTF8));
+                Files.move(temp.toPath(), new File(this.cacheDir, key + ".txt").toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (Exception ex) {
+                System.out.println("Could not persist the rollout duration: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the durations of the service, ignoring invalid lines.
+     */
+    private List<Long> read(String key) {
+        List<Long> durations = new ArrayList<Long>();
+        File file = new File(this.cacheDir, key + ".txt");
+        if (! file.isFile()) return durations;
+
+        try {
+            for (String line : Files.readAllLines(file.toPath(), UTF8)) {
+                if (line.trim().matches("[0-9]+")) durations.add(Long.parseLong(line.trim()));
+            }
+        }
+        catch (Exception ex) {
+            durations.clear();
+        }
+
+        return durations;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+public class RolloutResult {
+
+    // Final status of the service rollout.
+    public enum Status {
+        SUCCEEDED, FAILED, CANCELLED
+    }
+
+    // Class attributes.
+    private final String service;
+    private final Status status;
+    private final int version;
+    private final long duration;
+    private final String message;
+
+    /**
+     * Class constructor.
+     *
+     * @param service openshift service
+     * @param status final status of the rollout
+     * @param version deployment version triggered, or 0 when it was not triggered
+     * @param duration time in milliseconds spent on the service
+     * @param message error message, or null
+     */
+    public RolloutResult(String service, Status status, int version, long duration, String message) {
+        this.service = service;
+        this.status = status;
+        this.version = version;
+        this.duration = duration;
+        this.message = message;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        String line = String.format("%-40s %-10s #%-5d %6.1fs", service, status, version, duration / 1000.0);
+        return message == null ? line : line + "  " + message;
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import okhttp3.Call;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class RolloutWatcher {
+
+    // Result of the watch.
+    public enum Result {
+        COMPLETED, TIMEOUT, UNSUPPORTED
+    }
+
+    // Pod states kept for each pod of the deployment.
+    private enum PodState {
+        PENDING, RUNNING, READY, FAILED
+    }
+
+    // Class attributes.
+    private final OpenshiftClient client;
+    private final Map<String, PodState> pods = new HashMap<String, PodState>();
+
+    private JSONObject deployConfig;
+    private int expectedVersion;
+    private int latestVersion;
+    private int desiredReplicas;
+    private int updatedReplicas;
+    private String podsVersion;
+    private String configVersion;
+
+    private boolean podsDropped;
+    private boolean configDropped;
+    private boolean relist;
+    private boolean unsupported;
+    private long droppedAt;
+    private long reconnectDelay;
+    private int drops;
+    private Exception failure;
+
+    private Call podsWatch;
+    private Call configWatch;
+
+    // Incremented on each new watch, so events of cancelled watches are ignored.
+    private int podsGeneration;
+    private int configGeneration;
+
+    /**
+     * Class constructor.
+     *
+     * @param client openshift client of the deployed service
+     */
+    public RolloutWatcher(OpenshiftClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Wait the given deployment version, when it could not be started yet on the
+     * server, for example by the asynchronous configuration change trigger.
+     *
+     * @param expectedVersion the deployment version to wait
+     */
+    public RolloutWatcher withVersion(int expectedVersion) {
+        this.expectedVersion = expectedVersion;
+        return this;
+    }
+
+    /**
+     * Watch the deployment pods and the Deployment Configuration until all the
+     * updated replicas are ready. A dropped watch is reconnected from the last
+     * resourceVersion seen, with the backoff of the client retry policy, and the
+     * state is listed again when the server no longer has that version. The watch
+     * falls back to polling when it keeps failing without any event.
+     *
+     * @param timeout max time in milliseconds to wait the rollout
+     * @return COMPLETED, TIMEOUT or UNSUPPORTED when the server does not allow watches
+     * @throws Exception when any replica fails
+     */
+    public Result await(long timeout) throws Exception {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        try {
+            list();
+
+            synchronized (this) {
+                while (true) {
+                    if (failure != null) throw failure;
+                    if (unsupported) return Result.UNSUPPORTED;
+                    if (isReady()) return Result.COMPLETED;
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) return Result.TIMEOUT;
+
+                    if (relist) {
+                        cancel();
+                        list();
+                        continue;
+                    }
+
+                    if (podsDropped || configDropped) {
+                        long delay = droppedAt + reconnectDelay - System.currentTimeMillis();
+                        if (delay > 0) wait(Math.min(delay, remaining));
+                        else reconnect();
+                        continue;
+                    }
+
+                    wait(remaining);
+                }
+            }
+        }
+        finally {
+            cancel();
+        }
+    }
+
+    /**
+     * List the current state of the Deployment Configuration and the pods,
+     * then start watching both from the listed versions.
+     */
+    private synchronized void list() throws Exception {
+        updateConfig(client.getDeploymentConfig());
+        configVersion = deployConfig.getJSONObject("metadata").getString("resourceVersion");
+
+        JSONObject podList = client.getPodStatus(deployConfig);
+        if (podList.getInt("statusCode") != 200)
+            throw new Exception(
+                    String.format("Receive error '%d' on try to list the deployment pods", podList.getInt("statusCode"))
+            );
+
+        pods.clear();
+        if (podList.has("items")) {
+            for (Object item : podList.getJSONArray("items")) {
+                updatePod("ADDED", (JSONObject) item);
+            }
+        }
+        podsVersion = podList.getJSONObject("metadata").getString("resourceVersion");
+
+        relist = false;
+        podsDropped = false;
+        configDropped = false;
+
+        podsWatch = client.watchPods(deployConfig, podsVersion, new PodsHandler(++podsGeneration));
+        configWatch = client.watchDeploymentConfig(configVersion, new ConfigHandler(++configGeneration));
+    }
+
+    /**
+     * Open again the watches that were dropped by the server.
+     */
+    private synchronized void reconnect() throws Exception {
+        if (podsDropped) {
+            podsDropped = false;
+            podsWatch = client.watchPods(deployConfig, podsVersion, new PodsHandler(++podsGeneration));
+        }
+
+        if (configDropped) {
+            configDropped = false;
+            configWatch = client.watchDeploymentConfig(configVersion, new ConfigHandler(++configGeneration));
+        }
+    }
+
+    /**
+     * Stop the running watches.
+     */
+    private synchronized void cancel() {
+        if (podsWatch != null) podsWatch.cancel();
+        if (configWatch != null) configWatch.cancel();
+
+        podsWatch = null;
+        configWatch = null;
+        podsGeneration += 1;
+        configGeneration += 1;
+    }
+
+    /**
+     * Return true when there's no pending pod and all the updated replicas
+     * are ready, the same rule used by OpenshiftClient.notReady().
+     */
+    private boolean isReady() throws Exception {
+        if (latestVersion < expectedVersion) return false;
+
+        int ready = 0;
+        int pending = 0;
+        int failed = 0;
+
+        for (PodState state : pods.values()) {
+            if (state == PodState.READY) ready += 1;
+            else if (state == PodState.PENDING) pending += 1;
+            else if (state == PodState.FAILED) failed += 1;
+        }
+
+        // throwing error on failed replicas.
+        if (failed > 0)
+            throw new Exception(
+                    String.format("[%d] replicas has failed deployment", failed)
+            );
+
+        return pending == 0 && ready == updatedReplicas && updatedReplicas >= desiredReplicas;
+    }
+
+    /**
+     * Keep the replicas counts from the Deployment Configuration.
+     */
+    private void updateConfig(JSONObject config) {
+        JSONObject status = config.getJSONObject("status");
+
+        int version = status.getInt("latestVersion");
+        if (deployConfig != null && version != latestVersion) {
+            // a new deployment was triggered, the pods has another label now.
+            relist = true;
+        }
+
+        deployConfig = config;
+        latestVersion = version;
+        desiredReplicas = config.getJSONObject("spec").optInt("replicas", 0);
+        updatedReplicas = status.optInt("updatedReplicas", -1);
+    }
+
+    /**
+     * Keep the pod state from the pod object.
+     */
+    private void updatePod(String type, JSONObject pod) {
+        String name = pod.getJSONObject("metadata").getString("name");
+        if (type.equals("DELETED")) {
+            pods.remove(name);
+            return;
+        }
+
+        PodState state = PodState.RUNNING;
+        JSONObject status = pod.optJSONObject("status");
+        String phase = status != null ? status.optString("phase") : "";
+
+        if (phase.equals("Pending")) state = PodState.PENDING;
+        else if (phase.equals("Failed")) state = PodState.FAILED;
+        else if (phase.equals("Running")) {
+            JSONArray conditions = status.optJSONArray("conditions");
+            if (conditions != null) {
+                for (Object object : conditions) {
+                    JSONObject condition = (JSONObject) object;
+                    if (condition.optString("type").equals("Ready")
+                            && condition.optString("status").equals("True")) {
+                        state = PodState.READY;
+                    }
+                }
+            }
+        }
+
+        pods.put(name, state);
+    }
+
+    /**
+     * Return the resourceVersion of the object.
+     */
+    private static String versionOf(JSONObject object) {
+        return object.getJSONObject("metadata").getString("resourceVersion");
+    }
+
+    /**
+     * Handle the events of the pods watch.
+     */
+    private class PodsHandler implements HTTPClient.WatchHandler {
+        private final int generation;
+
+        PodsHandler(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void onEvent(String type, JSONObject object) {
+            synchronized (RolloutWatcher.this) {
+                if (generation != podsGeneration) return;
+
+                if (type.equals("ERROR")) {
+                    relist = true;
+                }
+                else {
+                    podsVersion = versionOf(object);
+                    updatePod(type, object);
+                }
+                drops = 0;
+                RolloutWatcher.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void onClosed(int statusCode) {
+            closed(statusCode, true, generation);
+        }
+
+        @Override
+        public void onFailure(Exception ex) {
+            closed(0, true, generation);
+        }
+    }
+
+    /**
+     * Handle the events of the Deployment Configuration watch.
+     */
+    private class ConfigHandler implements HTTPClient.WatchHandler {
+        private final int generation;
+
+        ConfigHandler(int generation) {
+            this.generation = generation;
+        }
+
+        @Override
+        public void onEvent(String type, JSONObject object) {
+            synchronized (RolloutWatcher.this) {
+                if (generation != configGeneration) return;
+
+                if (type.equals("ERROR")) {
+                    relist = true;
+                }
+                else if (type.equals("DELETED")) {
+                    failure = new Exception("The Deployment Configuration was deleted during the rollout");
+                }
+                else {
+                    configVersion = versionOf(object);
+                    updateConfig(object);
+                }
+                drops = 0;
+                RolloutWatcher.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void onClosed(int statusCode) {
+            closed(statusCode, false, generation);
+        }
+
+        @Override
+        public void onFailure(Exception ex) {
+            closed(0, false, generation);
+        }
+    }
+
+    /**
+     * Decide what to do when a watch ends: reconnect, list again or
+     * fall back to polling when watches are not allowed.
+     */
+    private synchronized void closed(int statusCode, boolean podsStream, int generation) {
+        if (generation != (podsStream ? podsGeneration : configGeneration)) return;
+
+        if (statusCode == 401 || statusCode == 403 || statusCode == 405 || statusCode == 501) {
+            unsupported = true;
+        }
+        else if (statusCode == 410) {
+            relist = true;
+        }
+        else {
+            // the server ending the stream (200) is normal, any other end is a failure.
+            RetryPolicy retryPolicy = client.getRetryPolicy();
+            if (statusCode != 200) drops += 1;
+            if (drops >= retryPolicy.getMaxAttempts()) unsupported = true;
+
+            if (podsStream) podsDropped = true;
+            else configDropped = true;
+            droppedAt = System.currentTimeMillis();
+            reconnectDelay = retryPolicy.nextDelay(Math.max(1, drops), null);
+        }
+
+        notifyAll();
+    }
+}
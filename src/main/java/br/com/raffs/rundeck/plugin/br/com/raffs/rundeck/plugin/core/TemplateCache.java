@@ -0,0 +1,128 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.jtwig.JtwigTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TemplateCache {
+
+    // The plugin instances are re-created by Rundeck, so the cache
+    // lives on the class to be shared between the executions.
+    private static final TemplateCache INSTANCE = new TemplateCache();
+
+    // Class attributes.
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final LinkedHashMap<String, JtwigTemplate> templates;
+    private volatile int maxEntries;
+
+    /**
+     * Class constructor, responsible to initialize
+     * all the attributes.
+     */
+    private TemplateCache() {
+        this.maxEntries = 64;
+        this.templates = new LinkedHashMap<String, JtwigTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JtwigTemplate> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return the cache shared by every execution on the JVM.
+     *
+     * @return the template cache
+     */
+    public static TemplateCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Define the max number of compiled templates kept on memory.
+     *
+     * @param maxEntries max number of templates
+     * @return the instance of the template cache
+     */
+    public TemplateCache withMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        return this;
+    }
+
+    /**
+     * Return the compiled template of the given key, the template is created
+     * from the content only when it's not on the cache yet. Jtwig parses the
+     * template on the first render and keeps the result inside the template
+     * environment, so a cached template is never parsed again.
+     *
+     * @param key content hash of the template (ex: the git blob id)
+     * @param content template source
+     * @return the template ready to render
+     */
+    public JtwigTemplate get(String key, String content) {
+        JtwigTemplate template;
+        synchronized (templates) {
+            template = templates.get(key);
+        }
+
+        if (template != null) {
+            hits.incrementAndGet();
+            return template;
+        }
+
+        misses.incrementAndGet();
+        template = JtwigTemplate.inlineTemplate(content);
+
+        synchronized (templates) {
+            JtwigTemplate existing = templates.get(key);
+            if (existing != null) return existing;
+
+            templates.put(key, template);
+        }
+
+        return template;
+    }
+
+    /**
+     * Return the number of lookups found on the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of lookups that had to create the template.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Return the number of templates on the cache.
+     */
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class TraceLog {
+
+    // Trace logs shared by every execution on the JVM, one for each file.
+    private static final ConcurrentMap<String, TraceLog> LOGS = new ConcurrentHashMap<String, TraceLog>();
+
+    // Max number of lines waiting to be written, the oldest are dropped when full.
+    private static final int CAPACITY = 4096;
+
+    // Interval (in milliseconds) between the writes of the waiting lines.
+    private static final long FLUSH_INTERVAL = 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Writes the trace logs in background, so the calls never wait for the disk.
+    private static final ScheduledExecutorService FLUSHER =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "openshift-trace-log");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Class attributes.
+    private final File file;
+    private volatile long maxSize;
+    private volatile int maxFiles;
+
+    // ring buffer of the lines not written yet.
+    private final String[] lines = new String[CAPACITY];
+    private int head;
+    private int size;
+    private long dropped;
+
+    private TraceLog(File file) {
+        this.file = file;
+        this.maxSize = 10L * 1024 * 1024;
+        this.maxFiles = 3;
+    }
+
+    /**
+     * Return the trace log of the file, shared by all the clients writing on it.
+     *
+     * @param path path of the JSON-lines file
+     * @return the trace log of the file
+     */
+    public static TraceLog forFile(String path) {
+        String key = new File(path).getAbsolutePath();
+        TraceLog log = LOGS.get(key);
+        if (log == null) {
+            final TraceLog created = new TraceLog(new File(key));
+            log = LOGS.putIfAbsent(key, created);
+            if (log == null) {
+                log = created;
+                FLUSHER.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        created.flush();
+                    }
+                }, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return log;
+    }
+
+    /**
+     * Define the size of the file before it's rotated.
+     *
+     * @param maxSize size in bytes
+     * @return the instance of the trace log
+     */
+    public TraceLog withMaxSize(long maxSize) {
+        this.maxSize = Math.max(1024, maxSize);
+        return this;
+    }
+
+    /**
+     * Define how many rotated files are kept (file.1 ... file.N).
+     *
+     * @param maxFiles number of rotated files
+     * @return the instance of the trace log
+     */
+    public TraceLog withMaxFiles(int maxFiles) {
+        this.maxFiles = Math.max(0, maxFiles);
+        return this;
+    }
+
+    /**
+     * Add a line to the trace, written on the next flush.
+     *
+     * @param line the JSON document, without line break
+     */
+    public void record(String line) {
+        synchronized (lines) {
+            if (size == CAPACITY) {
+                // overwrite the oldest line.
+                lines[head] = line;
+                head = (head + 1) % CAPACITY;
+                dropped += 1;
+            }
+            else {
+                lines[(head + size) % CAPACITY] = line;
+                size += 1;
+            }
+        }
+    }
+
+    /**
+     * Write the waiting lines on the file, rotating it when it's full.
+     * Errors are printed and the lines discarded, the trace never fails a deployment.
+     */
+    public void flush() {
+        List<String> pending = new ArrayList<String>();
+        long lost;
+        synchronized (lines) {
+            for (int i = 0; i < size; i++) {
+                int index = (head + i) % CAPACITY;
+                pending.add(lines[index]);
+                lines[index] = null;
+            }
+            head = 0;
+            size = 0;
+            lost = dropped;
+            dropped = 0;
+        }
+
+        if (pending.isEmpty() && lost == 0) return;
+
+        // only one thread writes on the file at a time.
+        synchronized (file) {
+            try {
+                File directory = file.getParentFile();
+                if (directory != null && ! directory.isDirectory()) directory.mkdirs();
+                if (file.length() >= maxSize) rotate();
+
+                Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), UTF8);
+                try {
+                    if (lost > 0) writer.write(String.format("{\"dropped\":%d}\n", lost));
+                    for (String line : pending) {
+                        writer.write(line);
+                        writer.write('\n');
+                    }
+                }
+                finally {
+                    writer.close();
+                }
+            }
+            catch (IOException ex) {
+                System.out.println(String.format("Could not write the trace log %s: %s", file, ex.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Shift the rotated files, the oldest is removed.
+     */
+    private void rotate() throws IOException {
+        if (maxFiles == 0) {
+            if (! file.delete()) throw new IOException("could not remove the full trace log");
+            return;
+        }
+
+        new File(file.getPath() + "." + maxFiles).delete();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File rotated = new File(file.getPath() + "." + i);
+            if (rotated.exists()) rotated.renameTo(new File(file.getPath() + "." + (i + 1)));
+        }
+
+        if (! file.renameTo(new File(file.getPath() + ".1")))
+            throw new IOException("could not rotate the trace log");
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.Okio;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+class TransferInterceptor implements Interceptor {
+
+    // Min size (in bytes) of the request bodies compressed.
+    private static final long MIN_GZIP_SIZE = 1024;
+
+    // Messages of the Status returned when the server could not decode the request body.
+    private static final Pattern DECODE_ERROR = Pattern.compile(
+            "invalid character|unknown format|couldn't get version/kind|unable to decode|error decoding|json parse error",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    // Servers which refused a compressed request body, they receive the bodies as is.
+    private static final Set<String> GZIP_UNSUPPORTED =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    // Whether it's the network interceptor, seeing the bytes on the wire.
+    private final boolean network;
+
+    /**
+     * Tag of the requests sent by the HTTPClient.
+     */
+    static class Tag {
+        final TransferStats stats;
+        final boolean gzip;
+        final TraceLog trace;
+
+        Tag(TransferStats stats, boolean gzip, TraceLog trace) {
+            this.stats = stats;
+            this.gzip = gzip;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param network true for the network interceptor, false for the application one
+     */
+    TransferInterceptor(boolean network) {
+        this.network = network;
+    }
+
+    /**
+     * The application interceptor compresses the request body when asked, counts
+     * the decoded bytes and records the latency of the operation, the network
+     * interceptor counts the bytes on the wire.
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (! (request.tag() instanceof Tag)) return chain.proceed(request);
+
+        Tag tag = (Tag) request.tag();
+        if (network) {
+            tag.stats.addSentWire(request.body() != null ? request.body().contentLength() : 0);
+            return counted(chain.proceed(request), tag.stats, true);
+        }
+
+        tag.stats.addCall();
+        tag.stats.addSent(request.body() != null ? request.body().contentLength() : 0);
+
+        String operation = operation(request);
+        long startedAt = System.nanoTime();
+        Response response;
+        try {
+            response = send(chain, request, tag);
+        }
+        catch (IOException ex) {
+            Metrics.registry().increment(Metrics.HTTP_REQUESTS, Metrics.labels("operation", operation, "code", "error"));
+            throw ex;
+        }
+
+        // the watches are open until the rollout finishes, only the others have a meaningful latency.
+        if (! "true".equals(request.url().queryParameter("watch"))) {
+            Metrics.registry().observe(Metrics.HTTP_DURATION, Metrics.labels("operation", operation),
+                    (System.nanoTime() - startedAt) / 1e9);
+        }
+        Metrics.registry().increment(Metrics.HTTP_REQUESTS,
+                Metrics.labels("operation", operation, "code", String.valueOf(response.code())));
+
+        return response;
+    }
+
+    /**
+     * Send the request, compressed when asked and the server accepts it.
+     */
+    private static Response send(Chain chain, Request request, Tag tag) throws IOException {
+        String server = server(request.url());
+        if (tag.gzip && request.body() != null && request.body().contentLength() >= MIN_GZIP_SIZE
+                && ! GZIP_UNSUPPORTED.contains(server)) {
+
+            Response response = chain.proceed(request.newBuilder()
+                    .header("Content-Encoding", "gzip")
+                    .method(request.method(), gzip(request.body()))
+                    .build());
+
+            // the server does not accept compressed bodies, send them as is from now on.
+            if (response.code() == 415) {
+                response.close();
+                GZIP_UNSUPPORTED.add(server);
+                return counted(chain.proceed(request), tag.stats, false);
+            }
+
+            if (response.code() != 400 || ! decodeError(response)) return counted(response, tag.stats, false);
+
+            // the server could not read the compressed body, it's only remembered
+            // when the same body is accepted as is, the 400 could be about the content.
+            response.close();
+            Response plain = chain.proceed(request);
+            if (plain.code() != 400) GZIP_UNSUPPORTED.add(server);
+
+            return counted(plain, tag.stats, false);
+        }
+
+        return counted(chain.proceed(request), tag.stats, false);
+    }
+
+    /**
+     * Return whether the response is a Status telling the request body could not be decoded.
+     */
+    static boolean decodeError(Response response) {
+        try {
+            JSONObject status = new JSONObject(response.peekBody(16 * 1024).string());
+            return "Status".equals(status.optString("kind"))
+                    && DECODE_ERROR.matcher(status.optString("message")).find();
+        }
+        catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Name the operation from the method and the resource of the request,
+     * ex: "GET pods", "PATCH deploymentconfigs", "POST deploymentconfigs/instantiate".
+     */
+    static String operation(Request request) {
+        List<String> segments = new ArrayList<String>(request.url().pathSegments());
+        segments.removeAll(Collections.singleton(""));
+
+        // skip the api prefix (/api/v1, /oapi/v1) and the namespace.
+        if (! segments.isEmpty() && (segments.get(0).equals("api") || segments.get(0).equals("oapi"))) {
+            segments = segments.subList(Math.min(2, segments.size()), segments.size());
+        }
+        if (segments.size() >= 2 && segments.get(0).equals("namespaces")) {
+            segments = segments.subList(2, segments.size());
+        }
+
+        String resource = segments.isEmpty() ? "/" : segments.get(0);
+        if (segments.size() >= 3) resource = resource + "/" + segments.get(2);
+
+        return request.method() + " " + resource;
+    }
+
+    /**
+     * Return the request body compressed with gzip.
+     */
+    private static RequestBody gzip(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(buffer));
+        body.writeTo(sink);
+        sink.close();
+
+        return RequestBody.create(body.contentType(), buffer.readByteString());
+    }
+
+    /**
+     * Count the bytes of the response body as it's read.
+     */
+    private static Response counted(Response response, final TransferStats stats, final boolean wire) {
+        ResponseBody body = response.body();
+        if (body == null) return response;
+
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (wire) stats.addReceivedWire(read);
+                else stats.addReceived(read);
+                return read;
+            }
+        };
+
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    /**
+     * Return the scheme, host and port of the url.
+     */
+    private static String server(HttpUrl url) {
+        return String.format("%s://%s:%d", url.scheme(), url.host(), url.port());
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransferStats {
+
+    // Class attributes.
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong sentWireBytes = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong receivedWireBytes = new AtomicLong();
+
+    void addCall() {
+        calls.incrementAndGet();
+    }
+
+    void addSent(long bytes) {
+        if (bytes > 0) sentBytes.addAndGet(bytes);
+    }
+
+    void addSentWire(long bytes) {
+        if (bytes > 0) sentWireBytes.addAndGet(bytes);
+    }
+
+    void addReceived(long bytes) {
+        if (bytes > 0) receivedBytes.addAndGet(bytes);
+    }
+
+    void addReceivedWire(long bytes) {
+        if (bytes > 0) receivedWireBytes.addAndGet(bytes);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * Bytes of the request bodies, before the compression.
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * Bytes of the request bodies sent to the server, after the compression.
+     */
+    public long getSentWireBytes() {
+        return sentWireBytes.get();
+    }
+
+    /**
+     * Bytes of the response bodies, after the decompression.
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Bytes of the response bodies received from the server, before the decompression.
+     */
+    public long getReceivedWireBytes() {
+        return receivedWireBytes.get();
+    }
+
+    /**
+     * Describe the transferred bytes, ex: 12 calls, sent 8.1 KB (2.0 KB on the wire),
+     * received 310.4 KB (41.7 KB on the wire)
+     */
+    public String describe() {
+        return String.format(
+                "%d calls, sent %s (%s on the wire), received %s (%s on the wire)",
+                getCalls(),
+                size(getSentBytes()), size(getSentWireBytes()),
+                size(getReceivedBytes()), size(getReceivedWireBytes())
+        );
+    }
+
+    /**
+     * Format the number of bytes.
+     */
+    private static String size(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+public enum UpdateStrategy {
+
+    // Replace the whole Deployment Configuration.
+    PUT("put"),
+
+    // Send the changed fields as a JSON merge patch, the changed lists are sent as a whole.
+    MERGE_PATCH("merge-patch"),
+
+    // Send the changed fields as a strategic merge patch, merging the lists by their key.
+    STRATEGIC_MERGE_PATCH("strategic-merge-patch");
+
+    private final String name;
+
+    UpdateStrategy(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Return the update strategy of the configuration value.
+     *
+     * @param name put, merge-patch or strategic-merge-patch
+     * @return the update strategy
+     * @throws Exception when the name is unknown
+     */
+    public static UpdateStrategy fromString(String name) throws Exception {
+        if (name == null) return STRATEGIC_MERGE_PATCH;
+
+        for (UpdateStrategy strategy : values()) {
+            if (strategy.name.equalsIgnoreCase(name.trim())) return strategy;
+        }
+
+        throw new Exception(String.format("Unknown update strategy: %s", name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -23,46 +23,124 @@ import okhttp3.Response;
 
 import javax.xml.bind.DatatypeConverter;
 import java.io.UnsupportedEncodingException;
-import java.util.concurrent.TimeUnit;
+import java.security.MessageDigest;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Utils {
 
+    // OAuth tokens shared by every execution, keyed by server and user.
+    private static final ConcurrentMap<String, CachedToken> TOKENS =
+            new ConcurrentHashMap<String, CachedToken>();
+
+    // Token lifetime (in seconds) when the server does not return the expires_in.
+    private static final long DEFAULT_TOKEN_LIFETIME = 3600;
+
+    // Min time (in seconds) before the expiration to refresh the token.
+    private static final long TOKEN_REFRESH_MARGIN = 60;
+
     /**
-     * Responsible to remove unused double-quotes on boolean, integers
-     * and other values.
+     * Wait the future result, failing with the exception which
+     * failed the future instead of the ExecutionException.
+     *
+     * @param future the asynchronous result
+     * @return the result
      */
-    static String parserString(String str) {
-        return str
-             .replace("\"privileged\":\"false\"", "\"privileged\":false")
-             .replace("\"test\":\"false\"", "\"test\":false")
-             .replace("\"automatic\":\"true\"", "\"automatic\":true")
-             .replace("\"port\":\"8080\"", "\"port\": 8080");
+    public static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) cause = cause.getCause();
+
+            if (cause instanceof Exception) throw (Exception) cause;
+            throw ex;
+        }
     }
 
     /**
      * Helper library to extract the token from the responsose.
      */
     static String extractTokenContent(String tokenContext) {
-        String token = null;
-        Pattern pattern = Pattern.compile("access_token=(.*?)\\&");
-        Matcher matcher = pattern.matcher(tokenContext);
+        return extractParameter(tokenContext, "access_token");
+    }
+
+    /**
+     * Helper library to extract a parameter from the OAuth redirect location.
+     */
+    static String extractParameter(String location, String name) {
+        String value = null;
+        Pattern pattern = Pattern.compile("[#?&]" + Pattern.quote(name) + "=([^&]*)");
+        Matcher matcher = pattern.matcher(location);
         while (matcher.find()) {
-            token = matcher.group(1);
+            value = matcher.group(1);
         }
 
-        return token;
+        return value;
     }
 
     /**
-     * Function responsible to return a token from Openshift.
+     * Function responsible to return a token from Openshift. The token is
+     * cached per server/user and shared between concurrent jobs, a new one
+     * is requested only shortly before it expires or after being invalidated.
      *
+     * @param httpClient client connected to the Openshift server
      * @param username
      * @param password
      * @return
      */
-    static String getToken(String baseUrl, String username, String password, int timeout) {
+    static String getToken(HTTPClient httpClient, String username, String password) {
+        String key = tokenKey(httpClient.getBaseUrl(), username, password);
+
+        CachedToken cached = TOKENS.get(key);
+        if (cached == null) {
+            CachedToken created = new CachedToken();
+            cached = TOKENS.putIfAbsent(key, created);
+            if (cached == null) cached = created;
+        }
+
+        // only one job requests the token, the others wait for it.
+        synchronized (cached) {
+            if (cached.authorization != null && System.currentTimeMillis() < cached.refreshAt) {
+                return cached.authorization;
+            }
+
+            cached.authorization = requestToken(httpClient, username, password, cached);
+            return cached.authorization;
+        }
+    }
+
+    /**
+     * Forget the cached token of the user, normally because the server
+     * answered 401 to a request using it. A token already replaced by
+     * another job is kept, so it's not requested twice.
+     *
+     * @param baseUrl openshift server url
+     * @param username
+     * @param password
+     * @param rejected authorization rejected by the server
+     */
+    static void invalidateToken(String baseUrl, String username, String password, String rejected) {
+        CachedToken cached = TOKENS.get(tokenKey(baseUrl, username, password));
+        if (cached != null) {
+            synchronized (cached) {
+                if (cached.authorization != null && cached.authorization.equals(rejected)) {
+                    cached.authorization = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Request a new token to the Openshift OAuth server.
+     */
+    private static String requestToken(HTTPClient httpClient, String username, String password, CachedToken cached) {
 
         // Handling exception
         try {
@@ -80,14 +158,14 @@ public class Utils {
             // Define the path
             String path = String.format(
                     "%s/oauth/authorize?client_id=openshift-challenging-client&response_type=token",
-                    baseUrl
+                    httpClient.getBaseUrl()
             );
 
-            // Instance the OkHttpClient on the class.
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .writeTimeout(timeout, TimeUnit.SECONDS)
-                    .readTimeout(timeout, TimeUnit.SECONDS)
-                    .connectTimeout(timeout, TimeUnit.SECONDS)
+            // Use the client shared with the API calls, without following the
+            // redirect since the token is given on the redirect location.
+            OkHttpClient client = httpClient.getHttpClient().newBuilder()
+                    .followRedirects(false)
+                    .followSslRedirects(false)
                     .build();
 
             // Whether to Connect Using TOKEN Method or
@@ -97,14 +175,30 @@ public class Utils {
                     .url(path)
                     .addHeader("X-CSRF-Token", "1")
                     .addHeader("Authorization", "Basic " + enconding)
-                    .addHeader("Content-Type", "Application/json")
                     .build();
 
-            // send the request and parser to JSON status
+            // send the request and read the token from the redirect location.
             Response response = client.newCall(request).execute();
+            String location = response.header("Location", "");
+            response.close();
+
+            String token = Utils.extractTokenContent(location);
+            if (token == null) {
+                throw new Exception(
+                        String.format("Could not find the access token on the OAuth response [%d]", response.code())
+                );
+            }
+
+            long lifetime = DEFAULT_TOKEN_LIFETIME;
+            String expiresIn = Utils.extractParameter(location, "expires_in");
+            if (expiresIn != null && expiresIn.matches("[0-9]+")) lifetime = Long.parseLong(expiresIn);
+
+            // refresh on the last 10% of the lifetime, at least one minute before the expiration.
+            long margin = Math.max(TOKEN_REFRESH_MARGIN, lifetime / 10);
+            cached.refreshAt = System.currentTimeMillis() + Math.max(0, lifetime - margin) * 1000;
 
             // Return the Authorization string from OAuth token.
-            return String.format("Bearer %s", Utils.extractTokenContent(response.toString()));
+            return String.format("Bearer %s", token);
         } catch (Exception exception) {
             exception.printStackTrace();
         }
@@ -112,4 +206,29 @@ public class Utils {
         // that's it.
         return null;
     }
+
+    /**
+     * Define the cache key of the token, the password is hashed so a
+     * changed password does not reuse the previous token.
+     */
+    private static String tokenKey(String baseUrl, String username, String password) {
+        String secret;
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(password.getBytes("UTF-8"));
+            secret = DatatypeConverter.printHexBinary(hash);
+        }
+        catch (Exception ex) {
+            secret = Integer.toHexString(password.hashCode());
+        }
+
+        return String.format("%s|%s|%s", baseUrl, username, secret);
+    }
+
+    /**
+     * Authorization cached for a server/user.
+     */
+    private static class CachedToken {
+        String authorization;
+        long refreshAt;
+    }
 }
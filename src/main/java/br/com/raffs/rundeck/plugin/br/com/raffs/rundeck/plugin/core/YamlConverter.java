@@ -0,0 +1,309 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import com.esotericsoftware.yamlbeans.parser.*;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+public class YamlConverter {
+
+    // YAML tags that drive the scalar type explicitly.
+    private static final String TAG_PREFIX = "tag:yaml.org,2002:";
+
+    // Plain scalars patterns used to infer the types.
+    private static final Pattern NULL = Pattern.compile("^(~|null|Null|NULL|)$");
+    private static final Pattern BOOLEAN = Pattern.compile("^(true|True|TRUE|false|False|FALSE)$");
+    private static final Pattern DECIMAL = Pattern.compile("^[-+]?(0|[1-9][0-9_]*)$");
+    private static final Pattern OCTAL = Pattern.compile("^[-+]?0o?[0-7_]+$");
+    private static final Pattern HEXADECIMAL = Pattern.compile("^[-+]?0x[0-9a-fA-F_]+$");
+    private static final Pattern FLOAT = Pattern.compile(
+            "^[-+]?(\\.[0-9]+|[0-9][0-9_]*(\\.[0-9_]*)?)([eE][-+]?[0-9]+)?$");
+
+    // Mappings and lists holding only strings on the API, their plain scalars are not typed:
+    // labels, annotations and selectors values, and the command and args of the containers.
+    private static final Set<String> STRING_MAPS = new HashSet<String>(Arrays.asList(
+            "labels", "annotations", "nodeSelector", "selector", "matchLabels"));
+    private static final Set<String> STRING_LISTS = new HashSet<String>(Arrays.asList(
+            "command", "args"));
+
+    // YAML merge key, copy the aliased mapping into the current one.
+    private static final String MERGE_KEY = "<<";
+
+    /**
+     * Convert the first YAML document into a JSON object keeping the scalar
+     * types: plain scalars become boolean, numbers or null when they look like
+     * one, while quoted and block scalars are always strings. The plain scalars
+     * of the fields the API requires as strings (env values, labels, annotations,
+     * selectors, command and args) are kept as strings too. The YAML events
+     * are consumed one by one, no intermediate map of strings is built.
+     *
+     * @param yaml the YAML content
+     * @return json-object with the document content
+     */
+    public static JSONObject toJSON(String yaml) throws Exception {
+        return toJSON(new StringReader(yaml));
+    }
+
+    /**
+     * Convert the first YAML document read from the reader into a JSON object.
+     *
+     * @param reader the YAML content
+     * @return json-object with the document content
+     */
+    public static JSONObject toJSON(Reader reader) throws Exception {
+        Parser parser = new Parser(reader);
+        Deque<Frame> stack = new ArrayDeque<Frame>();
+        Map<String, Object> anchors = new HashMap<String, Object>();
+        Object root = null;
+
+        try {
+            Event event;
+            while ((event = parser.getNextEvent()) != null) {
+                Object value;
+                String anchor = null;
+
+                switch (event.type) {
+                    case MAPPING_START:
+                    case SEQUENCE_START:
+                        Frame frame = new Frame(
+                                event.type == EventType.MAPPING_START ? new JSONObject() : new JSONArray(),
+                                ((NodeEvent) event).anchor,
+                                stack.isEmpty() ? null : stack.peek().childName()
+                        );
+                        if (! stack.isEmpty() && stack.peek().isKey()) {
+                            throw new Exception(
+                                    "Complex mapping keys are not supported, line " + parser.getLineNumber());
+                        }
+                        stack.push(frame);
+                        continue;
+
+                    case MAPPING_END:
+                    case SEQUENCE_END:
+                        Frame closed = stack.pop();
+                        value = closed.container;
+                        anchor = closed.anchor;
+                        break;
+
+                    case SCALAR:
+                        ScalarEvent scalar = (ScalarEvent) event;
+                        anchor = scalar.anchor;
+
+                        // mapping keys are kept as they are written.
+                        if (! stack.isEmpty() && stack.peek().isKey()) {
+                            stack.peek().key = scalar.value;
+                            continue;
+                        }
+                        value = scalarValue(scalar, ! stack.isEmpty() && stack.peek().holdsStrings());
+                        break;
+
+                    case ALIAS:
+                        String name = ((AliasEvent) event).anchor;
+                        if (! anchors.containsKey(name))
+                            throw new Exception("Could not find the YAML anchor: " + name);
+
+                        value = copy(anchors.get(name));
+                        if (! stack.isEmpty() && stack.peek().isKey()) {
+                            stack.peek().key = String.valueOf(value);
+                            continue;
+                        }
+                        break;
+
+                    case DOCUMENT_END:
+                    case STREAM_END:
+                        return root instanceof JSONObject ? (JSONObject) root : new JSONObject();
+
+                    default:
+                        continue;
+                }
+
+                if (anchor != null) anchors.put(anchor, value);
+
+                if (stack.isEmpty()) root = value;
+                else stack.peek().add(value);
+            }
+        }
+        finally {
+            parser.close();
+        }
+
+        return root instanceof JSONObject ? (JSONObject) root : new JSONObject();
+    }
+
+    /**
+     * Resolve the scalar type from its tag, or from the plain value
+     * when there's no tag and the field is not a string.
+     */
+    private static Object scalarValue(ScalarEvent scalar, boolean string) {
+        String value = scalar.value;
+
+        if (scalar.tag != null && scalar.tag.startsWith(TAG_PREFIX)) {
+            String tag = scalar.tag.substring(TAG_PREFIX.length());
+            if (tag.equals("str")) return value;
+            if (tag.equals("null")) return JSONObject.NULL;
+            if (tag.equals("bool")) return Boolean.valueOf(value.trim());
+            if (tag.equals("int")) return integerValue(value.trim());
+            if (tag.equals("float")) return Double.valueOf(value.trim().replace("_", ""));
+            return value;
+        }
+
+        // only plain (not quoted, not block) scalars have the type inferred.
+        if (! scalar.implicit[0] || string) return value;
+
+        if (NULL.matcher(value).matches()) return JSONObject.NULL;
+        if (BOOLEAN.matcher(value).matches()) return Boolean.valueOf(value.toLowerCase());
+        if (DECIMAL.matcher(value).matches()
+                || OCTAL.matcher(value).matches()
+                || HEXADECIMAL.matcher(value).matches()) return integerValue(value);
+        if (FLOAT.matcher(value).matches()) return Double.valueOf(value.replace("_", ""));
+
+        return value;
+    }
+
+    /**
+     * Parse the integer as decimal, octal (0644 or 0o644) or hexadecimal,
+     * using the smallest java type where it fits.
+     */
+    private static Object integerValue(String value) {
+        String digits = value.replace("_", "");
+        boolean negative = digits.startsWith("-");
+        if (digits.startsWith("-") || digits.startsWith("+")) digits = digits.substring(1);
+
+        int radix = 10;
+        if (digits.startsWith("0x")) {
+            radix = 16;
+            digits = digits.substring(2);
+        }
+        else if (digits.startsWith("0o")) {
+            radix = 8;
+            digits = digits.substring(2);
+        }
+        else if (digits.length() > 1 && digits.startsWith("0")) {
+            radix = 8;
+            digits = digits.substring(1);
+        }
+
+        BigInteger number = new BigInteger(digits, radix);
+        if (negative) number = number.negate();
+
+        if (number.bitLength() < 32) return number.intValue();
+        if (number.bitLength() < 64) return number.longValue();
+        return number;
+    }
+
+    /**
+     * Return a deep copy of the aliased value, so changing one of the
+     * references does not change the others.
+     */
+    private static Object copy(Object value) {
+        if (value instanceof JSONObject) return new JSONObject(value.toString());
+        if (value instanceof JSONArray) return new JSONArray(value.toString());
+        return value;
+    }
+
+    /**
+     * Mapping or sequence being built.
+     */
+    private static class Frame {
+        final Object container;
+        final String anchor;
+        final String name;
+        String key;
+
+        /**
+         * @param name key of the mapping or list, the items of a list have the name of the list
+         */
+        Frame(Object container, String anchor, String name) {
+            this.container = container;
+            this.anchor = anchor;
+            this.name = name;
+        }
+
+        /**
+         * Return the name of the mapping or list started inside this one.
+         */
+        String childName() {
+            return container instanceof JSONArray ? name : key;
+        }
+
+        /**
+         * Return whether the next scalar is a value the API requires as string.
+         */
+        boolean holdsStrings() {
+            if (container instanceof JSONArray) return STRING_LISTS.contains(name);
+
+            // the value of the items of the env list.
+            if ("env".equals(name) && "value".equals(key)) return true;
+            return STRING_MAPS.contains(name);
+        }
+
+        /**
+         * Return whether the next value of a mapping is its key.
+         */
+        boolean isKey() {
+            return container instanceof JSONObject && key == null;
+        }
+
+        /**
+         * Add the value on the sequence, or on the mapping under the pending key.
+         * Null values are not added on mappings, the same as an absent field.
+         */
+        void add(Object value) {
+            if (container instanceof JSONArray) {
+                ((JSONArray) container).put(value);
+                return;
+            }
+
+            JSONObject mapping = (JSONObject) container;
+            if (key.equals(MERGE_KEY)) {
+                merge(mapping, value);
+            }
+            else if (value != JSONObject.NULL) {
+                mapping.put(key, value);
+            }
+            key = null;
+        }
+
+        /**
+         * Copy the merged mapping fields which are not defined yet.
+         */
+        private static void merge(JSONObject mapping, Object value) {
+            if (value instanceof JSONArray) {
+                for (Object item : (JSONArray) value) merge(mapping, item);
+            }
+            else if (value instanceof JSONObject) {
+                JSONObject merged = (JSONObject) value;
+                for (String field : merged.keySet()) {
+                    if (! mapping.has(field)) mapping.put(field, merged.get(field));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonDiffTest {
+
+    // Manifest of the last update, with a probe, limits, a node selector and a mount.
+    private static final String APPLIED = "{\"spec\":{\"template\":{\"spec\":{"
+            + "\"nodeSelector\":{\"region\":\"eu\"},"
+            + "\"containers\":[{\"name\":\"app\",\"image\":\"app:1\",\"command\":[\"run\"],"
+            + "\"readinessProbe\":{\"httpGet\":{\"path\":\"/health\",\"port\":8080}},"
+            + "\"resources\":{\"limits\":{\"cpu\":\"500m\"},\"requests\":{\"cpu\":\"100m\"}},"
+            + "\"volumeMounts\":[{\"name\":\"config\",\"mountPath\":\"/etc/app\"}]}]}}}}";
+
+    /**
+     * Return an object with the resource limit.
+     */
+    private static JSONObject resources(String resource, Object quantity) {
+        return new JSONObject().put("resources",
+                new JSONObject().put("limits", new JSONObject().put(resource, quantity)));
+    }
+
+    /**
+     * Return the live object: the last applied manifest with the fields filled by the server.
+     */
+    private static JSONObject live() {
+        JSONObject live = JsonDiff.withLastApplied(new JSONObject(APPLIED));
+        live.getJSONObject("metadata").put("resourceVersion", "10");
+        live.getJSONObject("spec").put("revisionHistoryLimit", 10);
+        container(live).put("terminationMessagePath", "/dev/termination-log");
+        return live;
+    }
+
+    private static JSONObject container(JSONObject object) {
+        return object.getJSONObject("spec").getJSONObject("template").getJSONObject("spec")
+                .getJSONArray("containers").getJSONObject(0);
+    }
+
+    private static JSONObject podSpec(JSONObject patch) {
+        return patch.getJSONObject("spec").getJSONObject("template").getJSONObject("spec");
+    }
+
+    @Test
+    public void lastAppliedIsReadFromTheAnnotation() {
+        JSONObject applied = JsonDiff.lastApplied(live());
+        assertTrue(JsonDiff.contains(applied, new JSONObject(APPLIED)));
+        assertTrue(JsonDiff.contains(new JSONObject(APPLIED), applied));
+        assertNull(JsonDiff.lastApplied(new JSONObject(APPLIED)));
+    }
+
+    @Test
+    public void lastAppliedDoesNotKeepMetadataNorStatus() {
+        JSONObject desired = new JSONObject(APPLIED)
+                .put("metadata", new JSONObject().put("name", "app"))
+                .put("status", new JSONObject().put("latestVersion", 2));
+
+        JSONObject applied = JsonDiff.lastApplied(JsonDiff.withLastApplied(desired));
+        assertFalse(applied.has("metadata"));
+        assertFalse(applied.has("status"));
+        assertFalse(desired.getJSONObject("metadata").has("annotations"));
+    }
+
+    @Test
+    public void removedProbeIsDeleted() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+        container(desired).remove("readinessProbe");
+
+        JSONObject patch = JsonDiff.strategicMergePatch(live, desired, JsonDiff.lastApplied(live));
+        JSONObject item = podSpec(patch).getJSONArray("containers").getJSONObject(0);
+        assertEquals("app", item.getString("name"));
+        assertTrue(item.isNull("readinessProbe"));
+        assertEquals(2, item.length());
+    }
+
+    @Test
+    public void removedLimitsAreDeleted() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+        container(desired).getJSONObject("resources").remove("limits");
+
+        JSONObject patch = JsonDiff.strategicMergePatch(live, desired, JsonDiff.lastApplied(live));
+        JSONObject resources = podSpec(patch).getJSONArray("containers").getJSONObject(0).getJSONObject("resources");
+        assertTrue(resources.isNull("limits"));
+        assertFalse(resources.has("requests"));
+    }
+
+    @Test
+    public void removedNodeSelectorAndCommandAreDeleted() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+        desired.getJSONObject("spec").getJSONObject("template").getJSONObject("spec").remove("nodeSelector");
+        container(desired).remove("command");
+
+        JSONObject patch = JsonDiff.mergePatch(live, desired, JsonDiff.lastApplied(live));
+        assertTrue(podSpec(patch).isNull("nodeSelector"));
+
+        // the merge patch replaces the whole list of containers.
+        JSONObject item = podSpec(patch).getJSONArray("containers").getJSONObject(0);
+        assertFalse(item.has("command"));
+        assertEquals("app:1", item.getString("image"));
+    }
+
+    @Test
+    public void removedMountsAreDeleted() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+        container(desired).remove("volumeMounts");
+
+        JSONObject patch = JsonDiff.strategicMergePatch(live, desired, JsonDiff.lastApplied(live));
+        assertTrue(podSpec(patch).getJSONArray("containers").getJSONObject(0).isNull("volumeMounts"));
+    }
+
+    @Test
+    public void fieldsFilledByTheServerAreKept() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+
+        assertEquals(0, JsonDiff.strategicMergePatch(live, desired, JsonDiff.lastApplied(live)).length());
+        assertEquals(0, JsonDiff.mergePatch(live, desired, JsonDiff.lastApplied(live)).length());
+    }
+
+    @Test
+    public void removedProbeIsAChange() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+        container(desired).remove("readinessProbe");
+
+        List<String> changes = JsonDiff.changes(live, desired, JsonDiff.lastApplied(live));
+        assertEquals(1, changes.size());
+        assertEquals("spec.template.spec.containers[app].readinessProbe: removed", changes.get(0));
+    }
+
+    @Test
+    public void removedValueFromIsAChange() {
+        JSONObject env = new JSONObject().put("name", "TOKEN")
+                .put("valueFrom", new JSONObject().put("secretKeyRef", new JSONObject().put("name", "app").put("key", "token")));
+        JSONObject desired = new JSONObject(APPLIED);
+        container(desired).put("env", new JSONArray().put(env));
+        JSONObject live = JsonDiff.withLastApplied(desired);
+
+        JSONObject changed = new JSONObject(APPLIED);
+        container(changed).put("env", new JSONArray().put(new JSONObject().put("name", "TOKEN").put("value", "fixed")));
+        container(live).getJSONArray("env").getJSONObject(0).put("value", "fixed");
+
+        List<String> changes = JsonDiff.changes(live, changed, JsonDiff.lastApplied(live));
+        assertEquals(1, changes.size());
+        assertEquals("spec.template.spec.containers[app].env[TOKEN].valueFrom: removed", changes.get(0));
+    }
+
+    @Test
+    public void serverFieldsAreNotChanges() {
+        JSONObject live = live();
+        assertTrue(JsonDiff.changes(live, new JSONObject(APPLIED), JsonDiff.lastApplied(live)).isEmpty());
+    }
+
+    @Test
+    public void valuesOfDifferentTypesDiffer() {
+        assertFalse(JsonDiff.contains(new JSONObject().put("containerPort", 8080), new JSONObject().put("containerPort", "8080")));
+        assertFalse(JsonDiff.contains(new JSONObject().put("value", true), new JSONObject().put("value", "true")));
+        assertFalse(JsonDiff.contains(new JSONObject().put("value", "1.10"), new JSONObject().put("value", 1.1)));
+        assertTrue(JsonDiff.contains(new JSONObject().put("replicas", 3), new JSONObject().put("replicas", 3.0)));
+    }
+
+    @Test
+    public void quantitiesAndIntOrStringAcceptNumbers() {
+        JSONObject live = new JSONObject()
+                .put("resources", new JSONObject().put("limits", new JSONObject().put("cpu", "1")))
+                .put("httpGet", new JSONObject().put("port", "8080"))
+                .put("rollingParams", new JSONObject().put("maxSurge", "1"));
+        JSONObject desired = new JSONObject()
+                .put("resources", new JSONObject().put("limits", new JSONObject().put("cpu", 1)))
+                .put("httpGet", new JSONObject().put("port", 8080))
+                .put("rollingParams", new JSONObject().put("maxSurge", 1));
+
+        assertTrue(JsonDiff.contains(live, desired));
+        assertTrue(JsonDiff.changes(live, desired, null).isEmpty());
+        assertEquals(0, JsonDiff.strategicMergePatch(live, desired, null).length());
+    }
+
+    @Test
+    public void quantitiesAreComparedOnTheCanonicalForm() {
+        assertTrue(JsonDiff.contains(resources("cpu", "1"), resources("cpu", "1000m")));
+        assertTrue(JsonDiff.contains(resources("cpu", "500m"), resources("cpu", 0.5)));
+        assertTrue(JsonDiff.contains(resources("memory", "1Gi"), resources("memory", "1024Mi")));
+        assertTrue(JsonDiff.contains(resources("memory", "128M"), resources("memory", "128e6")));
+        assertTrue(JsonDiff.changes(resources("cpu", "1"), resources("cpu", "1000m"), null).isEmpty());
+        assertEquals(0, JsonDiff.strategicMergePatch(resources("memory", "1Gi"), resources("memory", "1024Mi"), null).length());
+    }
+
+    @Test
+    public void differentQuantitiesDiffer() {
+        assertFalse(JsonDiff.contains(resources("cpu", "1"), resources("cpu", "100m")));
+        assertFalse(JsonDiff.contains(resources("memory", "1G"), resources("memory", "1Gi")));
+        assertEquals(Arrays.asList("resources.limits.memory: \"1Gi\" -> \"2Gi\""),
+                JsonDiff.changes(resources("memory", "1Gi"), resources("memory", "2Gi"), null));
+    }
+
+    @Test
+    public void nothingIsDeletedWithoutTheLastApplied() {
+        JSONObject live = live();
+        JSONObject desired = new JSONObject(APPLIED);
+        container(desired).remove("readinessProbe");
+
+        assertEquals(0, JsonDiff.strategicMergePatch(live, desired, null).length());
+    }
+}
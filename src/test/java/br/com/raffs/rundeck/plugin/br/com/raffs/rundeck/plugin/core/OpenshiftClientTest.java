@@ -0,0 +1,115 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OpenshiftClientTest {
+
+    private MockWebServer server;
+    private OpenshiftClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OpenshiftClient()
+                .withServerUrl(server.url("").toString().replaceAll("/$", ""))
+                .withApiVersion("v1")
+                .withProject("p")
+                .withService("app")
+                .withToken("token")
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void deploymentStartedByTheUpdateIsNotInstantiated() throws Exception {
+        JSONObject updated = deployConfig(3);
+
+        assertSame(updated, client.triggerDeployment(updated, 2, true));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void changedConfigurationIsInstantiatedWithoutForce() throws Exception {
+        server.enqueue(new MockResponse().setBody(deployConfig(3).toString()));
+
+        JSONObject triggered = client.triggerDeployment(deployConfig(2), 2, true);
+
+        assertEquals(3, triggered.getJSONObject("status").getInt("latestVersion"));
+        assertInstantiated(false);
+    }
+
+    @Test
+    public void unchangedTemplateOnTheServerKeepsTheVersion() throws Exception {
+        // the client-side diff found a change the server does not see, nothing is started.
+        server.enqueue(new MockResponse().setBody(deployConfig(2).toString()));
+
+        JSONObject triggered = client.triggerDeployment(deployConfig(2), 2, true);
+
+        assertEquals(2, triggered.getJSONObject("status").getInt("latestVersion"));
+        assertInstantiated(false);
+    }
+
+    @Test
+    public void unchangedConfigurationIsForced() throws Exception {
+        server.enqueue(new MockResponse().setBody(deployConfig(3).toString()));
+
+        JSONObject triggered = client.triggerDeployment(deployConfig(2), 2, false);
+
+        assertEquals(3, triggered.getJSONObject("status").getInt("latestVersion"));
+        assertInstantiated(true);
+    }
+
+    /**
+     * Assert the single request sent was an instantiate with the given force.
+     */
+    private void assertInstantiated(boolean force) throws Exception {
+        assertEquals(1, server.getRequestCount());
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertTrue(request.getPath().endsWith("/namespaces/p/deploymentconfigs/app/instantiate"));
+
+        JSONObject body = new JSONObject(request.getBody().readUtf8());
+        assertTrue(body.getBoolean("latest"));
+        assertEquals(force, body.getBoolean("force"));
+    }
+
+    private static JSONObject deployConfig(int latestVersion) {
+        return new JSONObject()
+                .put("kind", "DeploymentConfig")
+                .put("metadata", new JSONObject().put("name", "app"))
+                .put("status", new JSONObject().put("latestVersion", latestVersion));
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhaseTimerTest {
+
+    @Test
+    public void overlappingIntervalsAreCountedOnce() {
+        // three services on the same phase at the same time.
+        assertEquals(100, PhaseTimer.wallClock(Arrays.asList(
+                new long[] { 0, 100 }, new long[] { 10, 90 }, new long[] { 50, 100 }
+        )));
+    }
+
+    @Test
+    public void sequentialIntervalsAreAdded() {
+        assertEquals(50, PhaseTimer.wallClock(Arrays.asList(
+                new long[] { 60, 80 }, new long[] { 0, 30 }
+        )));
+    }
+
+    @Test
+    public void partiallyOverlappingIntervalsAreMerged() {
+        assertEquals(130, PhaseTimer.wallClock(Arrays.asList(
+                new long[] { 0, 50 }, new long[] { 40, 80 }, new long[] { 100, 150 }
+        )));
+    }
+
+    @Test
+    public void noIntervals() {
+        assertEquals(0, PhaseTimer.wallClock(Collections.<long[]>emptyList()));
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TransferInterceptorTest {
+
+    private static final String DECODE_ERROR = "{\"kind\":\"Status\",\"status\":\"Failure\"," +
+            "\"message\":\"invalid character '\\\\x1f' looking for beginning of value\",\"code\":400}";
+
+    private static final String INVALID = "{\"kind\":\"Status\",\"status\":\"Failure\"," +
+            "\"message\":\"DeploymentConfig.apps.openshift.io \\\"app\\\" is invalid\",\"code\":400}";
+
+    private MockWebServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        client = new OkHttpClient.Builder().addInterceptor(new TransferInterceptor(false)).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void unsupportedMediaTypeIsRemembered() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(415));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        assertEquals(200, patch());
+        assertEquals(200, patch());
+
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void decodeErrorIsRememberedWhenThePlainBodyIsAccepted() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody(DECODE_ERROR));
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        assertEquals(200, patch());
+        assertEquals(200, patch());
+
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void decodeErrorIsNotRememberedWhenThePlainBodyIsRefused() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody(DECODE_ERROR));
+        server.enqueue(new MockResponse().setResponseCode(400).setBody(INVALID));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        assertEquals(400, patch());
+        assertEquals(200, patch());
+
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertNull(server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void otherBadRequestsAreReturnedAsIs() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400).setBody(INVALID));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        assertEquals(400, patch());
+        assertEquals(200, patch());
+
+        assertEquals(2, server.getRequestCount());
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+        assertEquals("gzip", server.takeRequest().getHeader("Content-Encoding"));
+    }
+
+    /**
+     * Send a PATCH with a body big enough to be compressed, returning the status code.
+     */
+    private int patch() throws Exception {
+        StringBuilder body = new StringBuilder("{\"spec\":{\"replicas\":1,\"padding\":\"");
+        for (int i = 0; i < 2048; i++) body.append('x');
+        body.append("\"}}");
+
+        Request request = new Request.Builder()
+                .url(server.url("/oapi/v1/namespaces/p/deploymentconfigs/app"))
+                .method("PATCH", RequestBody.create(MediaType.parse("application/merge-patch+json"), body.toString()))
+                .tag(new TransferInterceptor.Tag(new TransferStats(), true, null))
+                .build();
+
+        Response response = client.newCall(request).execute();
+        try {
+            return response.code();
+        }
+        finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyleft 2017 - RafaOS (rafaeloliveira.cs@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package br.com.raffs.rundeck.plugin.br.com.raffs.rundeck.plugin.core;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class YamlConverterTest {
+
+    private static final String MANIFEST = "apiVersion: v1\n"
+            + "kind: DeploymentConfig\n"
+            + "metadata:\n"
+            + "  name: app\n"
+            + "  labels:\n"
+            + "    canary: true\n"
+            + "    release: 1.10\n"
+            + "  annotations:\n"
+            + "    build: 0123\n"
+            + "spec:\n"
+            + "  replicas: 3\n"
+            + "  paused: false\n"
+            + "  selector:\n"
+            + "    version: 2\n"
+            + "  template:\n"
+            + "    metadata:\n"
+            + "      labels:\n"
+            + "        enabled: yes\n"
+            + "        tier: 1\n"
+            + "    spec:\n"
+            + "      nodeSelector:\n"
+            + "        zone: 1\n"
+            + "      containers:\n"
+            + "        - name: app\n"
+            + "          image: app:1.10\n"
+            + "          command: [run, 8080]\n"
+            + "          args:\n"
+            + "            - --debug\n"
+            + "            - true\n"
+            + "            - 0644\n"
+            + "          ports:\n"
+            + "            - containerPort: 8080\n"
+            + "          env:\n"
+            + "            - name: VERSION\n"
+            + "              value: 1.10\n"
+            + "            - name: MODE\n"
+            + "              value: 0123\n"
+            + "            - name: ENABLED\n"
+            + "              value: true\n"
+            + "            - name: EMPTY\n"
+            + "              value: \"\"\n"
+            + "          securityContext:\n"
+            + "            runAsUser: 1001\n"
+            + "            privileged: false\n"
+            + "          volumeMounts:\n"
+            + "            - name: config\n"
+            + "              mountPath: /etc/app\n"
+            + "      volumes:\n"
+            + "        - name: config\n"
+            + "          configMap:\n"
+            + "            defaultMode: 0644\n";
+
+    private static JSONObject container(JSONObject manifest) {
+        return manifest.getJSONObject("spec").getJSONObject("template").getJSONObject("spec")
+                .getJSONArray("containers").getJSONObject(0);
+    }
+
+    @Test
+    public void envValuesAreStrings() throws Exception {
+        JSONArray env = container(YamlConverter.toJSON(MANIFEST)).getJSONArray("env");
+        assertEquals("1.10", env.getJSONObject(0).get("value"));
+        assertEquals("0123", env.getJSONObject(1).get("value"));
+        assertEquals("true", env.getJSONObject(2).get("value"));
+        assertEquals("", env.getJSONObject(3).get("value"));
+    }
+
+    @Test
+    public void labelsAndAnnotationsAreStrings() throws Exception {
+        JSONObject manifest = YamlConverter.toJSON(MANIFEST);
+        JSONObject metadata = manifest.getJSONObject("metadata");
+        assertEquals("true", metadata.getJSONObject("labels").get("canary"));
+        assertEquals("1.10", metadata.getJSONObject("labels").get("release"));
+        assertEquals("0123", metadata.getJSONObject("annotations").get("build"));
+
+        JSONObject template = manifest.getJSONObject("spec").getJSONObject("template");
+        assertEquals("yes", template.getJSONObject("metadata").getJSONObject("labels").get("enabled"));
+        assertEquals("1", template.getJSONObject("metadata").getJSONObject("labels").get("tier"));
+    }
+
+    @Test
+    public void selectorsAreStrings() throws Exception {
+        JSONObject spec = YamlConverter.toJSON(MANIFEST).getJSONObject("spec");
+        assertEquals("2", spec.getJSONObject("selector").get("version"));
+        assertEquals("1", spec.getJSONObject("template").getJSONObject("spec").getJSONObject("nodeSelector").get("zone"));
+    }
+
+    @Test
+    public void commandAndArgsAreStrings() throws Exception {
+        JSONObject container = container(YamlConverter.toJSON(MANIFEST));
+        assertEquals("8080", container.getJSONArray("command").get(1));
+        assertEquals("true", container.getJSONArray("args").get(1));
+        assertEquals("0644", container.getJSONArray("args").get(2));
+    }
+
+    @Test
+    public void otherFieldsAreTyped() throws Exception {
+        JSONObject manifest = YamlConverter.toJSON(MANIFEST);
+        assertEquals(3, manifest.getJSONObject("spec").get("replicas"));
+        assertEquals(false, manifest.getJSONObject("spec").get("paused"));
+
+        JSONObject container = container(manifest);
+        assertEquals("app:1.10", container.get("image"));
+        assertEquals(8080, container.getJSONArray("ports").getJSONObject(0).get("containerPort"));
+        assertEquals(1001, container.getJSONObject("securityContext").get("runAsUser"));
+        assertEquals(false, container.getJSONObject("securityContext").get("privileged"));
+
+        // 0644 is the octal file mode.
+        JSONObject volume = manifest.getJSONObject("spec").getJSONObject("template").getJSONObject("spec")
+                .getJSONArray("volumes").getJSONObject(0);
+        assertEquals(420, volume.getJSONObject("configMap").get("defaultMode"));
+    }
+
+    @Test
+    public void keysNamedLikeStringFieldsAreTypedElsewhere() throws Exception {
+        JSONObject json = YamlConverter.toJSON("spec:\n  value: 1\n  items:\n    - value: 2\n");
+        assertEquals(1, json.getJSONObject("spec").get("value"));
+        assertEquals(2, json.getJSONObject("spec").getJSONArray("items").getJSONObject(0).get("value"));
+        assertFalse(json.getJSONObject("spec").get("value") instanceof String);
+        assertTrue(YamlConverter.toJSON("labels:\n  - 1\n").getJSONArray("labels").get(0) instanceof Integer);
+    }
+}